@@ -0,0 +1,259 @@
+package ch.ethz.rse.main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.utils.FileUtilsWrapper;
+import ch.ethz.rse.utils.Metrics;
+import ch.ethz.rse.verify.ClassToVerify;
+import ch.ethz.rse.verify.Verifier;
+import soot.SootClass;
+import soot.SootHelper;
+
+/**
+ * Entry point for verifying many classes in a single JVM. All classes are
+ * loaded into one Soot scene, and the classes are then verified on a
+ * work-stealing pool. Results and per-task timings are written to a CSV file:
+ * analysisMs is the time spent on the pointer analysis and the numerical
+ * analysis of the class (in all domains used, shared by its properties), and
+ * checkMs the remaining time spent checking each property.
+ */
+public class BatchMain {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchMain.class);
+
+	private static final String HEADER = "packageName,property,result,expected,analysisMs,checkMs";
+
+	/**
+	 * All properties to check for a single class
+	 */
+	private static class Job {
+
+		private final String packageName;
+
+		/**
+		 * null if the class file could not be found
+		 */
+		private final ClassToVerify tc;
+
+		private final EnumSet<VerificationProperty> properties = EnumSet.noneOf(VerificationProperty.class);
+
+		/**
+		 * expected results, if known (e.g., from a CSV written by
+		 * {@link ch.ethz.rse.testing.VerificationTestCaseCollector})
+		 */
+		private final Map<VerificationProperty, String> expected = new EnumMap<VerificationProperty, String>(VerificationProperty.class);
+
+		private Job(String packageName, ClassToVerify tc) {
+			this.packageName = packageName;
+			this.tc = tc;
+		}
+
+		/**
+		 *
+		 * @param sc the class to verify, or null if it could not be loaded
+		 * @return one CSV line per property
+		 */
+		private List<String> run(SootClass sc) {
+			Map<VerificationProperty, String> results = new EnumMap<VerificationProperty, String>(VerificationProperty.class);
+			Map<VerificationProperty, Long> checkMilliseconds = new EnumMap<VerificationProperty, Long>(VerificationProperty.class);
+			long analysisMilliseconds = 0;
+			if (sc == null) {
+				// already logged when loading
+				return this.getLines(results, analysisMilliseconds, checkMilliseconds);
+			}
+			try {
+				long startTime = System.nanoTime();
+				// methods are not analyzed in parallel, the pool is already busy with
+				// other classes
+				Verifier v = new Verifier(sc, 1);
+				long analysisNanos = System.nanoTime() - startTime;
+				analysisMilliseconds = analysisNanos / 1000000;
+
+				for (VerificationProperty p : this.properties) {
+					// numerical analysis runs on the first check not decided from
+					// constants, and is counted separately
+					long checkStartTime = System.nanoTime();
+					long numericalNanos = v.getMetrics().getNanos("numerical_analysis");
+					results.put(p, new VerificationResult(v.check(p)).toString());
+					long numericalDuration = v.getMetrics().getNanos("numerical_analysis") - numericalNanos;
+					analysisNanos += numericalDuration;
+					analysisMilliseconds = analysisNanos / 1000000;
+					checkMilliseconds.put(p, (System.nanoTime() - checkStartTime - numericalDuration) / 1000000);
+				}
+				Metrics.report(this.packageName + ":" + this.properties, v.getMetrics());
+			} catch (RuntimeException e) {
+				logger.error("Error verifying {}: {}", this.packageName, e);
+			}
+			return this.getLines(results, analysisMilliseconds, checkMilliseconds);
+		}
+
+		/**
+		 *
+		 * @return one CSV line per property, with ERROR for properties without a
+		 *         result
+		 */
+		private List<String> getLines(Map<VerificationProperty, String> results, long analysisMilliseconds,
+				Map<VerificationProperty, Long> checkMilliseconds) {
+			List<String> lines = new ArrayList<String>();
+			for (VerificationProperty p : this.properties) {
+				lines.add(String.join(",", this.packageName, p.toString(), results.getOrDefault(p, "ERROR"),
+						this.expected.getOrDefault(p, ""), Long.toString(analysisMilliseconds),
+						Long.toString(checkMilliseconds.getOrDefault(p, 0L))));
+			}
+			return lines;
+		}
+	}
+
+	public static void main(String[] args) throws ParseException, FileNotFoundException {
+		// prepare parser
+		Options options = new Options();
+		options.addOption(new Option("c", "csv", true, "CSV file of tasks (packageName,property,expected)"));
+		options.addOption(new Option("l", "list", true, "File listing fully qualified class names, one per line"));
+		options.addOption(new Option("d", "directory", true, "Class path directory, all classes in it are checked"));
+		options.addOption(new Option("p", "properties", true, "Comma-separated properties to check for -l and -d (default: all)"));
+		options.addOption(new Option("t", "threads", true, "Number of worker threads (default: number of cores)"));
+		options.addOption(new Option("o", "output", true, "Results file (default: target/batch-results.csv)"));
+		options.addOption(new Option("a", "domain", true, "Abstract domain(s): BOX, OCTAGON, POLKA, a comma-separated list, or ESCALATE"));
+		// build parser
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		if (cmd.hasOption("a")) {
+			Configuration.props.set("DOMAIN", cmd.getOptionValue("a"));
+		}
+
+		EnumSet<VerificationProperty> properties = EnumSet.allOf(VerificationProperty.class);
+		if (cmd.hasOption("p")) {
+			properties = EnumSet.noneOf(VerificationProperty.class);
+			for (String property : cmd.getOptionValue("p").split(",")) {
+				properties.add(VerificationProperty.valueOf(property.trim()));
+			}
+		}
+		int threads = Integer.parseInt(cmd.getOptionValue("t", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		String basedir = Configuration.props.getBasedir();
+		File output = new File(cmd.getOptionValue("o", basedir + "/target/batch-results.csv"));
+		File testClasses = new File(basedir + "/target/test-classes");
+
+		// collect jobs, one per class
+		Map<String, Job> jobs = new LinkedHashMap<String, Job>();
+		if (cmd.hasOption("c")) {
+			for (String line : FileUtilsWrapper.readFileInList(cmd.getOptionValue("c"))) {
+				String[] parts = line.trim().split(",");
+				if (parts.length < 2 || parts[0].equals("packageName")) {
+					// skip header and empty lines
+					continue;
+				}
+				Job job = BatchMain.getJob(jobs, testClasses, parts[0]);
+				VerificationProperty p = VerificationProperty.valueOf(parts[1]);
+				job.properties.add(p);
+				if (parts.length > 2) {
+					job.expected.put(p, parts[2]);
+				}
+			}
+		}
+		if (cmd.hasOption("l")) {
+			for (String line : FileUtilsWrapper.readFileInList(cmd.getOptionValue("l"))) {
+				String packageName = line.trim();
+				if (packageName.isEmpty() || packageName.startsWith("#")) {
+					continue;
+				}
+				BatchMain.getJob(jobs, testClasses, packageName).properties.addAll(properties);
+			}
+		}
+		if (cmd.hasOption("d")) {
+			File classPath = new File(cmd.getOptionValue("d"));
+			for (File f : FileUtils.listFiles(classPath, new String[] { "class" }, true)) {
+				String relative = classPath.toURI().relativize(f.toURI()).getPath();
+				String packageName = FilenameUtils.removeExtension(relative).replace('/', '.');
+				if (packageName.contains("$")) {
+					// skip nested classes
+					continue;
+				}
+				BatchMain.getJob(jobs, classPath, packageName).properties.addAll(properties);
+			}
+		}
+		if (jobs.isEmpty()) {
+			throw new ParseException("No classes to verify, use -c, -l, or -d");
+		}
+
+		// load all classes at once
+		List<ClassToVerify> classes = new ArrayList<ClassToVerify>();
+		for (Job job : jobs.values()) {
+			if (job.tc != null) {
+				classes.add(job.tc);
+			}
+		}
+		long startTime = System.nanoTime();
+		List<SootClass> scs = classes.isEmpty() ? new ArrayList<SootClass>() : SootHelper.loadClassesAndAnalyze(classes);
+		long loadMilliseconds = (System.nanoTime() - startTime) / 1000000;
+
+		// verify classes on a work-stealing pool
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+		int i = 0;
+		for (Job job : jobs.values()) {
+			SootClass sc = job.tc == null ? null : scs.get(i++);
+			futures.add(pool.submit(() -> job.run(sc)));
+		}
+
+		StringBuilder results = new StringBuilder(HEADER + "\n");
+		try {
+			for (Future<List<String>> future : futures) {
+				for (String line : future.get()) {
+					results.append(line).append("\n");
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			pool.shutdown();
+		}
+		long totalMilliseconds = (System.nanoTime() - startTime) / 1000000;
+
+		FileUtilsWrapper.writeStringToFile(output, results.toString());
+		logger.info("Runtime: Verified {} classes on {} threads in {}ms (loading: {}ms)", jobs.size(), threads, totalMilliseconds, loadMilliseconds);
+		logger.info("Wrote results to {}", output);
+	}
+
+	private static Job getJob(Map<String, Job> jobs, File classPath, String packageName) {
+		Job job = jobs.get(packageName);
+		if (job == null) {
+			ClassToVerify tc = null;
+			try {
+				tc = new ClassToVerify(classPath, packageName);
+			} catch (FileNotFoundException e) {
+				// reported as ERROR for all its properties, the other classes are still
+				// verified
+				logger.error("Error loading {}: {}", packageName, e);
+			}
+			job = new Job(packageName, tc);
+			jobs.put(packageName, job);
+		}
+		return job;
+	}
+
+}
@@ -0,0 +1,72 @@
+package ch.ethz.rse.main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.verify.ClassToVerify;
+
+/**
+ * Entry point for verifying multiple properties of a given program, running
+ * the numerical analysis only once. Unlike {@link Main}, prints one line
+ * <code>FINAL OUTPUT:PROPERTY:RESULT</code> per property.
+ */
+public class MultiPropertyMain {
+
+	public static void main(String[] args) throws ParseException, FileNotFoundException {
+		// prepare parser
+		Options options = new Options();
+		// parse package name
+		Option packageNameOption = new Option("n", "packageName", true, "Fully qualified name of class to check");
+		packageNameOption.setRequired(true);
+		options.addOption(packageNameOption);
+		// parse properties to verify
+		Option propertiesOption = new Option("p", "properties", true, "Comma-separated properties to check (default: all)");
+		options.addOption(propertiesOption);
+		// parse abstract domain
+		Option domainOption = new Option("a", "domain", true, "Abstract domain(s): BOX, OCTAGON, POLKA, a comma-separated list, or ESCALATE");
+		options.addOption(domainOption);
+		// build parser
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		if (cmd.hasOption("a")) {
+			Configuration.props.set("DOMAIN", cmd.getOptionValue("a"));
+		}
+
+		// prepare class
+		String packageName = cmd.getOptionValue("n");
+		File classPath = new File(Configuration.props.getBasedir() + "/target/test-classes");
+		ClassToVerify tc = new ClassToVerify(classPath, packageName);
+
+		EnumSet<VerificationProperty> properties;
+		if (cmd.hasOption("p")) {
+			properties = EnumSet.noneOf(VerificationProperty.class);
+			for (String property : cmd.getOptionValue("p").split(",")) {
+				properties.add(VerificationProperty.valueOf(property.trim()));
+			}
+		} else {
+			properties = EnumSet.allOf(VerificationProperty.class);
+		}
+
+		// run verification
+		Map<VerificationProperty, VerificationResult> results = Runner.verify(tc, properties);
+		System.out.flush();
+		System.err.flush();
+		for (Map.Entry<VerificationProperty, VerificationResult> e : results.entrySet()) {
+			System.out.println("FINAL OUTPUT:" + e.getKey() + ":" + e.getValue());
+		}
+	}
+
+}
@@ -1,9 +1,17 @@
 package ch.ethz.rse.main;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import ch.ethz.rse.VerificationProperty;
 import ch.ethz.rse.VerificationTask;
 import ch.ethz.rse.VerificationResult;
 import ch.ethz.rse.verify.AVerifier;
+import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.utils.Metrics;
 import ch.ethz.rse.verify.ClassToVerify;
+import ch.ethz.rse.verify.ResultStore;
 import ch.ethz.rse.verify.Verifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,33 +24,189 @@ import soot.SootHelper;
 public class Runner {
 	
 	private static final Logger logger = LoggerFactory.getLogger(Runner.class);
+
+	/**
+	 * Results of previous runs (null: not opened yet, or disabled)
+	 */
+	private static ResultStore results;
+
+	private static boolean resultsOpened = false;
 	
 	public static VerificationResult verify(VerificationTask t) {
+		return Runner.verify(t, false);
+	}
+
+	/**
+	 * Like {@link #verify(VerificationTask)}, but reuses the Soot scene of
+	 * previous calls (see {@link SootHelper#loadClassAndAnalyzeWarm})
+	 */
+	public static VerificationResult verifyWarm(VerificationTask t) {
+		return Runner.verify(t, true);
+	}
+
+	private static VerificationResult verify(VerificationTask t, boolean warm) {
 		long startTime = System.nanoTime();
 
-		VerificationResult ret = Runner.verifyInternal(t);
+		Metrics metrics = new Metrics();
+		ResultStore store = Runner.getResultStore();
+		byte[] key = null;
+		VerificationResult ret = null;
+		if (store != null) {
+			key = ResultStore.key(t.getTestClass(), t.property);
+			ret = store.lookup(key);
+		}
+
+		if (ret != null) {
+			logger.debug("Reusing stored result for {}", t);
+			metrics.add("results_reused", 1);
+		} else {
+			ret = Runner.verifyInternal(t, warm, metrics);
+			if (store != null) {
+				store.store(key, ret);
+			}
+		}
 
 		long endTime = System.nanoTime();
 		long durationMilliseconds = (endTime - startTime) / 1000000;
 		logger.debug("Runtime: Verified {} in {}ms", t, durationMilliseconds);
+		metrics.addTime("total", endTime - startTime);
+		Metrics.report(t.toLongString(), metrics);
 
 		return ret;
 	}
 
-	private static VerificationResult verifyInternal(VerificationTask t) {
+	private static VerificationResult verifyInternal(VerificationTask t, boolean warm, Metrics metrics) {
 		logger.debug("Verifying {}", t.toString());
 
 		ClassToVerify tc = t.getTestClass();
 
 		// load analyzed class
-		SootClass c = SootHelper.loadClassAndAnalyze(tc);
+		SootClass c;
+		if (warm) {
+			c = Runner.loadClassAndAnalyzeWarm(tc, metrics);
+		} else {
+			c = Runner.loadClassAndAnalyze(tc, metrics);
+		}
 
 		VerificationResult ret;
 
-		AVerifier v = new Verifier(c);
+		AVerifier v = Runner.createVerifier(c, metrics);
 		boolean isSafe = v.check(t.property);
+		metrics.addAll(v.getMetrics());
 		ret = new VerificationResult(isSafe);
 
 		return ret;
 	}
+
+	/**
+	 * Like {@link SootHelper#loadClassAndAnalyze(ClassToVerify)}, timing both
+	 * phases in metrics
+	 */
+	private static SootClass loadClassAndAnalyze(ClassToVerify tc, Metrics metrics) {
+		long startTime = System.nanoTime();
+		SootClass c = SootHelper.loadClass(tc);
+		long loadedTime = System.nanoTime();
+		SootHelper.runPointsToAnalysis();
+		metrics.addTime("soot_load", loadedTime - startTime);
+		metrics.addTime("spark", System.nanoTime() - loadedTime);
+		return c;
+	}
+
+	/**
+	 * Like {@link SootHelper#loadClassAndAnalyzeWarm(ClassToVerify)}, timing
+	 * both phases in metrics
+	 */
+	private static SootClass loadClassAndAnalyzeWarm(ClassToVerify tc, Metrics metrics) {
+		// the warm scene is shared, so it must not change between both phases
+		synchronized (SootHelper.class) {
+			long startTime = System.nanoTime();
+			SootClass c = SootHelper.loadClassWarm(tc);
+			long loadedTime = System.nanoTime();
+			SootHelper.runPointsToAnalysisWarm();
+			metrics.addTime("soot_load", loadedTime - startTime);
+			metrics.addTime("spark", System.nanoTime() - loadedTime);
+			return c;
+		}
+	}
+
+	/**
+	 * 
+	 * @return a verifier for c, timing the pointer analysis in metrics
+	 */
+	private static AVerifier createVerifier(SootClass c, Metrics metrics) {
+		long startTime = System.nanoTime();
+		AVerifier v = new Verifier(c);
+		metrics.addTime("points_to", System.nanoTime() - startTime);
+		return v;
+	}
+
+	/**
+	 * Verify multiple properties of the same class, sharing the numerical
+	 * analysis between them
+	 * 
+	 * @param tc         class to verify
+	 * @param properties properties to verify
+	 * @return the result for each property
+	 */
+	public static Map<VerificationProperty, VerificationResult> verify(ClassToVerify tc, EnumSet<VerificationProperty> properties) {
+		long startTime = System.nanoTime();
+		logger.debug("Verifying {}:{}", tc, properties);
+
+		// reuse stored results, and only verify the remaining properties
+		ResultStore store = Runner.getResultStore();
+		Map<VerificationProperty, VerificationResult> ret = new EnumMap<VerificationProperty, VerificationResult>(VerificationProperty.class);
+		Map<VerificationProperty, byte[]> keys = new EnumMap<VerificationProperty, byte[]>(VerificationProperty.class);
+		EnumSet<VerificationProperty> remaining = EnumSet.copyOf(properties);
+		if (store != null) {
+			for (VerificationProperty property : properties) {
+				byte[] key = ResultStore.key(tc, property);
+				VerificationResult result = store.lookup(key);
+				if (result != null) {
+					ret.put(property, result);
+					remaining.remove(property);
+				}
+				keys.put(property, key);
+			}
+		}
+
+		Metrics metrics = new Metrics();
+		metrics.add("results_reused", properties.size() - remaining.size());
+		if (!remaining.isEmpty()) {
+			SootClass c = Runner.loadClassAndAnalyze(tc, metrics);
+
+			AVerifier v = Runner.createVerifier(c, metrics);
+			Map<VerificationProperty, Boolean> results = v.check(remaining);
+			metrics.addAll(v.getMetrics());
+			for (Map.Entry<VerificationProperty, Boolean> e : results.entrySet()) {
+				VerificationResult result = new VerificationResult(e.getValue());
+				ret.put(e.getKey(), result);
+				if (store != null) {
+					store.store(keys.get(e.getKey()), result);
+				}
+			}
+		} else {
+			logger.debug("Reusing stored results for {}:{}", tc, properties);
+		}
+
+		long endTime = System.nanoTime();
+		long durationMilliseconds = (endTime - startTime) / 1000000;
+		logger.debug("Runtime: Verified {}:{} in {}ms", tc, properties, durationMilliseconds);
+		metrics.addTime("total", endTime - startTime);
+		Metrics.report(tc.getPackageName() + ":" + properties, metrics);
+
+		return ret;
+	}
+
+	/**
+	 * 
+	 * @return the store of results configured by
+	 *         {@link Configuration#getResultCache()}, or null if there is none
+	 */
+	private static synchronized ResultStore getResultStore() {
+		if (!Runner.resultsOpened) {
+			Runner.results = ResultStore.open(Configuration.props.getResultCache());
+			Runner.resultsOpened = true;
+		}
+		return Runner.results;
+	}
 }
\ No newline at end of file
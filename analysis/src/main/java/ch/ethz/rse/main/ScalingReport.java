@@ -0,0 +1,83 @@
+package ch.ethz.rse.main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.verify.ClassToVerify;
+import ch.ethz.rse.verify.Verifier;
+import soot.SootClass;
+import soot.SootHelper;
+
+/**
+ * Reports how checking all properties of a class scales with the number of
+ * threads analyzing its methods, and checks that results do not depend on it
+ */
+public class ScalingReport {
+
+	public static void main(String[] args) throws ParseException, FileNotFoundException {
+		// prepare parser
+		Options options = new Options();
+		// parse package name
+		Option packageNameOption = new Option("n", "packageName", true, "Fully qualified name of class to check");
+		packageNameOption.setRequired(true);
+		options.addOption(packageNameOption);
+		// parse thread counts
+		Option threadsOption = new Option("t", "threads", true, "Comma-separated thread counts (default: 1,2,4,8)");
+		options.addOption(threadsOption);
+		// parse repetitions
+		Option repetitionsOption = new Option("r", "repetitions", true, "Repetitions per thread count (default: 3)");
+		options.addOption(repetitionsOption);
+		// build parser
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		String packageName = cmd.getOptionValue("n");
+		String[] threadCounts = cmd.getOptionValue("t", "1,2,4,8").split(",");
+		int repetitions = Integer.parseInt(cmd.getOptionValue("r", "3"));
+
+		File classPath = new File(Configuration.props.getBasedir() + "/target/test-classes");
+		ClassToVerify tc = new ClassToVerify(classPath, packageName);
+		SootClass c = SootHelper.loadClassAndAnalyze(tc);
+
+		EnumSet<VerificationProperty> properties = EnumSet.allOf(VerificationProperty.class);
+		Map<VerificationProperty, Boolean> baseline = null;
+		double baselineMilliseconds = 0;
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-8s %12s %8s %s%n", "threads", "best[ms]", "speedup", "results"));
+		for (String threadCount : threadCounts) {
+			int threads = Integer.parseInt(threadCount.trim());
+			long best = Long.MAX_VALUE;
+			Map<VerificationProperty, Boolean> results = null;
+			for (int i = 0; i < repetitions; i++) {
+				long startTime = System.nanoTime();
+				results = new Verifier(c, threads).check(properties);
+				best = Math.min(best, System.nanoTime() - startTime);
+			}
+			double milliseconds = best / 1e6;
+
+			if (baseline == null) {
+				baseline = results;
+				baselineMilliseconds = milliseconds;
+			} else if (!baseline.equals(results)) {
+				throw new IllegalStateException("Results with " + threads + " threads differ: " + results + " vs. " + baseline);
+			}
+			report.append(String.format("%-8d %12.1f %8.2f %s%n", threads, milliseconds, baselineMilliseconds / milliseconds, results));
+		}
+
+		System.out.flush();
+		System.out.print(report);
+	}
+
+}
@@ -0,0 +1,128 @@
+package ch.ethz.rse.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.VerificationTask;
+import ch.ethz.rse.utils.Configuration;
+
+/**
+ * Long-running entry point verifying many tasks without restarting Soot.
+ *
+ * Reads one task per line, in the format <code>packageName PROPERTY</code>,
+ * from stdin or (with <code>-l port</code>) from connections to a socket on
+ * the loopback interface. For every task, answers with a line
+ * <code>RESULT:packageName:PROPERTY:SAFE</code> (or <code>UNSAFE</code>, or
+ * <code>ERROR</code>). The line <code>QUIT</code> stops the server.
+ */
+public class Server {
+
+	private static final Logger logger = LoggerFactory.getLogger(Server.class);
+
+	/**
+	 * Prefix of answer lines, allowing clients to skip logging output
+	 */
+	private static final String RESULT_PREFIX = "RESULT:";
+
+	private static final String QUIT = "QUIT";
+
+	public static void main(String[] args) throws ParseException, IOException {
+		// prepare parser
+		Options options = new Options();
+		// parse port to listen on
+		Option portOption = new Option("l", "listen", true, "Port to listen on (default: read tasks from stdin)");
+		options.addOption(portOption);
+		// parse abstract domain
+		Option domainOption = new Option("a", "domain", true, "Abstract domain(s): BOX, OCTAGON, POLKA, a comma-separated list, or ESCALATE");
+		options.addOption(domainOption);
+		// build parser
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		if (cmd.hasOption("a")) {
+			Configuration.props.set("DOMAIN", cmd.getOptionValue("a"));
+		}
+
+		if (cmd.hasOption("l")) {
+			int port = Integer.parseInt(cmd.getOptionValue("l"));
+			Server.listen(port);
+		} else {
+			Server.serve(System.in, System.out);
+		}
+	}
+
+	/**
+	 * Serve connections one after the other (Soot is not thread-safe)
+	 */
+	private static void listen(int port) throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+			logger.info("Listening on {}", serverSocket.getLocalSocketAddress());
+			boolean quit = false;
+			while (!quit) {
+				try (Socket socket = serverSocket.accept()) {
+					quit = Server.serve(socket.getInputStream(), socket.getOutputStream());
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return true if the client asked to quit
+	 */
+	private static boolean serve(InputStream in, OutputStream out) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		PrintStream writer = new PrintStream(out, true, StandardCharsets.UTF_8.name());
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			if (line.equals(QUIT)) {
+				return true;
+			}
+			writer.println(RESULT_PREFIX + Server.handle(line));
+		}
+		return false;
+	}
+
+	private static String handle(String line) {
+		String[] parts = line.split("\\s+");
+		if (parts.length != 2) {
+			logger.error("Malformed task: {}", line);
+			return line + ":ERROR";
+		}
+		String packageName = parts[0];
+		try {
+			VerificationProperty property = VerificationProperty.valueOf(parts[1]);
+			VerificationTask t = new VerificationTask(packageName, property);
+			VerificationResult result = Runner.verifyWarm(t);
+			return t.toLongString() + ":" + result.toString();
+		} catch (RuntimeException e) {
+			logger.error("Error verifying {}: {}", line, e);
+			return packageName + ":" + parts[1] + ":ERROR";
+		}
+	}
+
+}
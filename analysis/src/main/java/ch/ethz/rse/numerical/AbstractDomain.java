@@ -0,0 +1,59 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import apron.Box;
+import apron.Manager;
+import apron.Octagon;
+import apron.Polka;
+
+/**
+ * Numerical abstract domains available for the analysis, from cheapest to
+ * most precise
+ */
+public enum AbstractDomain {
+	BOX, OCTAGON, POLKA;
+
+	/**
+	 * Name of the ladder trying all domains, from cheapest to most precise
+	 */
+	public static final String ESCALATE = "ESCALATE";
+
+	/**
+	 *
+	 * @return a fresh manager for this domain (managers are not thread-safe)
+	 */
+	public Manager createManager() {
+		switch (this) {
+		case BOX:
+			return new Box();
+		case OCTAGON:
+			return new Octagon();
+		case POLKA:
+			return new Polka(true);
+		default:
+			throw new UnsupportedOperationException(this.toString());
+		}
+	}
+
+	/**
+	 *
+	 * @param s either {@link #ESCALATE}, or a comma-separated list of domains
+	 * @return the domains to try, in order
+	 */
+	public static List<AbstractDomain> parse(String s) {
+		if (s.trim().equalsIgnoreCase(ESCALATE)) {
+			return Arrays.asList(AbstractDomain.values());
+		}
+		List<AbstractDomain> domains = new ArrayList<AbstractDomain>();
+		for (String domain : s.split(",")) {
+			domains.add(AbstractDomain.valueOf(domain.trim().toUpperCase()));
+		}
+		if (domains.isEmpty()) {
+			throw new IllegalArgumentException("No abstract domain in " + s);
+		}
+		return domains;
+	}
+}
@@ -0,0 +1,400 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.ethz.rse.numerical.WeakTopologicalOrder.Component;
+import soot.Unit;
+import soot.UnitBox;
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.util.Chain;
+
+/**
+ * Computes the fixpoint of a {@link NumericalAnalysis} by iterating along a
+ * {@link WeakTopologicalOrder} of its unit graph (Bourdoncle's recursive
+ * strategy). Widening is only applied at loop heads, after a delay, and can be
+ * followed by narrowing passes.
+ *
+ * Only the units of a given region of the graph are evaluated, which must
+ * contain all predecessors of its units (e.g., a {@link QueryCone}).
+ *
+ * Every state is charged to a {@link NativeScope} when it is stored, so an
+ * exceeded native memory budget stops the iteration right away.
+ */
+class FixpointEngine {
+
+	private final NumericalAnalysis analysis;
+
+	private final UnitGraph graph;
+
+	/**
+	 * units to evaluate: {@link #graph}, or a {@link QueryCone} of it
+	 */
+	private final DirectedGraph<Unit> region;
+
+	/**
+	 * number of iterations at a loop head before widening
+	 */
+	private final int wideningDelay;
+
+	/**
+	 * number of decreasing passes over a loop after it stabilized
+	 */
+	private final int narrowingPasses;
+
+	/**
+	 * state before each unit
+	 */
+	private final Map<Unit, NumericalStateWrapper> before;
+
+	/**
+	 * state after falling out of each unit (at most one)
+	 */
+	private final Map<Unit, List<NumericalStateWrapper>> fallOut;
+
+	/**
+	 * state after each branch of each unit
+	 */
+	private final Map<Unit, List<NumericalStateWrapper>> branchOut;
+
+	/**
+	 * out-states of predecessors flowing into each unit, except along back edges
+	 */
+	private final Map<Unit, List<NumericalStateWrapper>> incoming = new IdentityHashMap<Unit, List<NumericalStateWrapper>>();
+
+	/**
+	 * out-states of predecessors flowing into each loop head along back edges,
+	 * i.e., from the body of its loop
+	 */
+	private final Map<Unit, List<NumericalStateWrapper>> backIncoming = new IdentityHashMap<Unit, List<NumericalStateWrapper>>();
+
+	/**
+	 * generations of the states in {@link #incoming} and then
+	 * {@link #backIncoming} of each unit, when they were last joined (absent:
+	 * never joined)
+	 */
+	private final Map<Unit, long[]> joinedGenerations = new IdentityHashMap<Unit, long[]>();
+
+	/**
+	 * entry points of the graph
+	 */
+	private final Set<Unit> entries = Collections.newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+
+	/**
+	 * recorder of the events of the iteration, or null if disabled
+	 */
+	private final FixpointTrace trace;
+
+	/**
+	 * charged with the states as they are stored
+	 */
+	private final NativeScope scope;
+
+	private int flowThroughCount = 0;
+
+	private int wideningCount = 0;
+
+	private int mergeCount = 0;
+
+	/**
+	 *
+	 * @param analysis        provides the transfer functions and lattice operations
+	 * @param graph           graph to analyze
+	 * @param region          units of graph to evaluate, closed under
+	 *                        predecessors (graph itself to evaluate all units)
+	 * @param wideningDelay   number of iterations at a loop head before widening
+	 * @param narrowingPasses number of decreasing passes over stabilized loops
+	 * @param before          filled with the state before each unit
+	 * @param fallOut         filled with the fall-out states of each unit
+	 * @param branchOut       filled with the branch-out states of each unit
+	 * @param trace           recorder of the events of the iteration, or null
+	 * @param scope           scope to charge the states to
+	 */
+	FixpointEngine(NumericalAnalysis analysis, UnitGraph graph, DirectedGraph<Unit> region, int wideningDelay, int narrowingPasses,
+			Map<Unit, NumericalStateWrapper> before, Map<Unit, List<NumericalStateWrapper>> fallOut,
+			Map<Unit, List<NumericalStateWrapper>> branchOut, FixpointTrace trace, NativeScope scope) {
+		this.analysis = analysis;
+		this.graph = graph;
+		this.region = region;
+		this.wideningDelay = wideningDelay;
+		this.narrowingPasses = narrowingPasses;
+		this.before = before;
+		this.fallOut = fallOut;
+		this.branchOut = branchOut;
+		this.trace = trace;
+		this.scope = scope;
+	}
+
+	/**
+	 * Run the analysis until a fixpoint is reached
+	 */
+	void solve() {
+		WeakTopologicalOrder wto = new WeakTopologicalOrder(this.region);
+		this.initialize(wto);
+		for (Component c : wto.getComponents()) {
+			this.stabilize(c);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of transfer function applications
+	 */
+	int getFlowThroughCount() {
+		return this.flowThroughCount;
+	}
+
+	/**
+	 *
+	 * @return number of widenings applied
+	 */
+	int getWideningCount() {
+		return this.wideningCount;
+	}
+
+	/**
+	 *
+	 * @return number of joins of the states of two predecessors
+	 */
+	int getMergeCount() {
+		return this.mergeCount;
+	}
+
+	private void initialize(WeakTopologicalOrder wto) {
+		Chain<Unit> units = this.graph.getBody().getUnits();
+
+		for (Unit u : this.region) {
+			this.before.put(u, this.analysis.newInitialFlow());
+			this.scope.update(u, this.before.get(u));
+
+			List<NumericalStateWrapper> fall = new ArrayList<NumericalStateWrapper>(1);
+			if (u.fallsThrough()) {
+				fall.add(this.analysis.newInitialFlow());
+			}
+			this.fallOut.put(u, fall);
+
+			List<NumericalStateWrapper> branch = new ArrayList<NumericalStateWrapper>(1);
+			if (u.branches()) {
+				for (int i = 0; i < u.getUnitBoxes().size(); i++) {
+					branch.add(this.analysis.newInitialFlow());
+				}
+			}
+			this.branchOut.put(u, branch);
+			for (NumericalStateWrapper out : fall) {
+				this.scope.update(out, out);
+			}
+			for (NumericalStateWrapper out : branch) {
+				this.scope.update(out, out);
+			}
+
+			this.incoming.put(u, new ArrayList<NumericalStateWrapper>(2));
+			this.backIncoming.put(u, new ArrayList<NumericalStateWrapper>(1));
+		}
+
+		// connect out-states to the units they flow into, within the region
+		for (Unit u : this.region) {
+			if (u.fallsThrough()) {
+				Unit succ = units.getSuccOf(u);
+				if (succ != null && this.incoming.containsKey(succ)) {
+					this.connect(wto, u, succ, this.fallOut.get(u).get(0));
+				}
+			}
+			if (u.branches()) {
+				int i = 0;
+				for (UnitBox box : u.getUnitBoxes()) {
+					NumericalStateWrapper out = this.branchOut.get(u).get(i++);
+					if (this.incoming.containsKey(box.getUnit())) {
+						this.connect(wto, u, box.getUnit(), out);
+					}
+				}
+			}
+		}
+
+		this.entries.addAll(this.region.getHeads());
+	}
+
+	/**
+	 * Iterate over c until its head is stable
+	 */
+	private void stabilize(Component c) {
+		if (!c.isLoop()) {
+			this.descend(c);
+			return;
+		}
+
+		Unit head = c.head;
+		for (int iteration = 0;; iteration++) {
+			if (iteration > 0 && this.isStable(head)) {
+				// post-fixpoint reached, without joining
+				NumericalStateWrapper.countConvergenceShortcut();
+				if (this.trace != null) {
+					this.trace.record(FixpointTrace.STABLE, head, 0, this.before.get(head));
+				}
+				break;
+			}
+			NumericalStateWrapper in = this.joinIncoming(head);
+			if (iteration > 0) {
+				NumericalStateWrapper old = this.before.get(head);
+				if (in.isIncludedIn(old)) {
+					// post-fixpoint reached
+					if (this.trace != null) {
+						this.trace.record(FixpointTrace.STABLE, head, 0, old);
+					}
+					break;
+				}
+				in.join(old);
+				if (iteration >= this.wideningDelay) {
+					if (this.trace != null) {
+						this.trace.record(FixpointTrace.WIDEN, head, 0, old);
+					}
+					old.widen(in);
+					in = old;
+					this.wideningCount++;
+				}
+			}
+			this.before.put(head, in);
+			this.scope.update(head, in);
+			this.apply(head);
+			for (Component e : c.body) {
+				this.stabilize(e);
+			}
+		}
+
+		for (int i = 0; i < this.narrowingPasses; i++) {
+			this.descend(c);
+		}
+	}
+
+	/**
+	 * Pass over c once, without widening. Starting from a post-fixpoint, the
+	 * result is again a post-fixpoint.
+	 */
+	private void descend(Component c) {
+		this.before.put(c.head, this.joinIncoming(c.head));
+		this.scope.update(c.head, this.before.get(c.head));
+		this.apply(c.head);
+		for (Component e : c.body) {
+			this.descend(e);
+		}
+	}
+
+	/**
+	 * Let out flow from pred into succ
+	 */
+	private void connect(WeakTopologicalOrder wto, Unit pred, Unit succ, NumericalStateWrapper out) {
+		if (wto.isInLoop(pred, succ)) {
+			// back edge: succ is the head of a loop containing pred
+			this.backIncoming.get(succ).add(out);
+		} else {
+			this.incoming.get(succ).add(out);
+		}
+	}
+
+	/**
+	 * 
+	 * @param head a loop head, whose incoming states were joined before
+	 * @return true if joining the incoming states of head again would give a
+	 *         state included in the current state before head, because each of
+	 *         them is unchanged since the last join at head (which is included
+	 *         in the current state), or is the current state itself
+	 */
+	private boolean isStable(Unit head) {
+		long[] generations = this.joinedGenerations.get(head);
+		long current = this.before.get(head).getGeneration();
+		int i = 0;
+		for (NumericalStateWrapper flow : this.incoming.get(head)) {
+			if (flow.getGeneration() != generations[i++] && flow.getGeneration() != current) {
+				return false;
+			}
+		}
+		for (NumericalStateWrapper flow : this.backIncoming.get(head)) {
+			if (flow.getGeneration() != generations[i++] && flow.getGeneration() != current) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private NumericalStateWrapper joinIncoming(Unit u) {
+		List<NumericalStateWrapper> flows = new ArrayList<NumericalStateWrapper>(this.incoming.get(u));
+		if (this.joinedGenerations.containsKey(u)) {
+			// before the first join at a loop head, nothing in its body was
+			// evaluated, so the states on back edges are still bottom
+			flows.addAll(this.backIncoming.get(u));
+		}
+		this.recordGenerations(u);
+
+		NumericalStateWrapper in;
+		if (!this.entries.contains(u) && !flows.isEmpty() && FixpointEngine.sameGeneration(flows)) {
+			// joining equal states gives the same state, and keeps its generation
+			in = flows.get(0).share();
+		} else {
+			if (this.entries.contains(u)) {
+				in = this.analysis.entryInitialFlow();
+			} else {
+				in = this.analysis.newInitialFlow();
+			}
+			// in is fresh, so it is joined in place
+			for (NumericalStateWrapper flow : flows) {
+				in.join(flow);
+			}
+			this.mergeCount += Math.max(0, flows.size() - 1);
+		}
+		if (this.trace != null) {
+			this.trace.record(FixpointTrace.JOIN, u, flows.size(), in);
+		}
+		return in;
+	}
+
+	/**
+	 * 
+	 * @return true if all flows have the same generation, i.e., are equal
+	 */
+	private static boolean sameGeneration(List<NumericalStateWrapper> flows) {
+		for (NumericalStateWrapper flow : flows) {
+			if (flow.getGeneration() != flows.get(0).getGeneration()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void recordGenerations(Unit u) {
+		List<NumericalStateWrapper> flows = this.incoming.get(u);
+		List<NumericalStateWrapper> back = this.backIncoming.get(u);
+		long[] generations = new long[flows.size() + back.size()];
+		int i = 0;
+		for (NumericalStateWrapper flow : flows) {
+			generations[i++] = flow.getGeneration();
+		}
+		for (NumericalStateWrapper flow : back) {
+			generations[i++] = flow.getGeneration();
+		}
+		this.joinedGenerations.put(u, generations);
+	}
+
+	private void apply(Unit u) {
+		this.flowThroughCount++;
+		this.analysis.flowThrough(this.before.get(u), u, this.fallOut.get(u), this.branchOut.get(u));
+		for (NumericalStateWrapper out : this.fallOut.get(u)) {
+			this.scope.update(out, out);
+		}
+		for (NumericalStateWrapper out : this.branchOut.get(u)) {
+			this.scope.update(out, out);
+		}
+		if (this.trace != null) {
+			for (NumericalStateWrapper out : this.fallOut.get(u)) {
+				this.trace.record(FixpointTrace.FLOW, u, 0, out);
+			}
+			int edge = 1;
+			for (NumericalStateWrapper out : this.branchOut.get(u)) {
+				this.trace.record(FixpointTrace.FLOW, u, edge++, out);
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package ch.ethz.rse.numerical;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import apron.ApronException;
+import apron.Manager;
+import soot.Unit;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Ring buffer of the most recent events of a {@link FixpointEngine}, for
+ * debugging. Recording an event stores a few integers and never builds
+ * strings. The buffer is only written to a file on request (see
+ * {@link #dump(File)}), e.g., when the analysis fails.
+ *
+ * File format (big-endian): magic {@link #MAGIC}, format version, method
+ * signature (modified UTF-8), number of units of the method, number of events
+ * recorded in total, number of events in the file, followed by the events in
+ * chronological order, each as kind (byte), unit (int, index in the body of
+ * the method), edge (byte) and state size (int, as reported by Apron, -1 for
+ * bottom).
+ */
+public class FixpointTrace {
+
+	/**
+	 * "FPTR"
+	 */
+	public static final int MAGIC = 0x46505452;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The state before a unit was computed from its predecessors (edge: number
+	 * of predecessors)
+	 */
+	public static final byte JOIN = 1;
+
+	/**
+	 * The state after a unit was computed (edge: 0 for falling through, i + 1
+	 * for the i-th branch target)
+	 */
+	public static final byte FLOW = 2;
+
+	/**
+	 * The state before a loop head was widened
+	 */
+	public static final byte WIDEN = 3;
+
+	/**
+	 * A loop head is stable
+	 */
+	public static final byte STABLE = 4;
+
+	private final String method;
+
+	private final Manager man;
+
+	/**
+	 * Index of each unit in the body of {@link #method}
+	 */
+	private final Map<Unit, Integer> ids = new IdentityHashMap<Unit, Integer>();
+
+	// events, in ring buffers of the same capacity
+	private final byte[] kinds;
+	private final int[] units;
+	private final byte[] edges;
+	private final int[] sizes;
+
+	/**
+	 * Number of events recorded so far
+	 */
+	private long recorded = 0;
+
+	/**
+	 *
+	 * @param method   signature of the analyzed method
+	 * @param graph    graph of the analyzed method
+	 * @param man      manager of the recorded states
+	 * @param capacity maximal number of events kept
+	 */
+	public FixpointTrace(String method, UnitGraph graph, Manager man, int capacity) {
+		this.method = method;
+		this.man = man;
+		for (Unit u : graph.getBody().getUnits()) {
+			this.ids.put(u, this.ids.size());
+		}
+		this.kinds = new byte[capacity];
+		this.units = new int[capacity];
+		this.edges = new byte[capacity];
+		this.sizes = new int[capacity];
+	}
+
+	/**
+	 * Record an event
+	 *
+	 * @param kind  kind of the event, e.g., {@link #FLOW}
+	 * @param u     unit of the event
+	 * @param edge  depends on kind
+	 * @param state state of the event
+	 */
+	void record(byte kind, Unit u, int edge, NumericalStateWrapper state) {
+		int i = (int) (this.recorded++ % this.kinds.length);
+		this.kinds[i] = kind;
+		this.units[i] = this.ids.get(u);
+		this.edges[i] = (byte) Math.min(edge, Byte.MAX_VALUE);
+		this.sizes[i] = this.getSize(state);
+	}
+
+	private int getSize(NumericalStateWrapper state) {
+		try {
+			return state.get().isBottom(this.man) ? -1 : state.get().getSize(this.man);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of events recorded so far, including events no longer kept
+	 */
+	public long getRecorded() {
+		return this.recorded;
+	}
+
+	/**
+	 * Write the events kept to file, replacing it
+	 *
+	 * @param file file to write
+	 */
+	public void dump(File file) throws IOException {
+		int kept = (int) Math.min(this.recorded, this.kinds.length);
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(this.method);
+			out.writeInt(this.ids.size());
+			out.writeLong(this.recorded);
+			out.writeInt(kept);
+			for (long n = this.recorded - kept; n < this.recorded; n++) {
+				int i = (int) (n % this.kinds.length);
+				out.writeByte(this.kinds[i]);
+				out.writeInt(this.units[i]);
+				out.writeByte(this.edges[i]);
+				out.writeInt(this.sizes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Decode a file written by {@link #dump(File)}, e.g., for inspection
+	 *
+	 * @param in contents of the file
+	 * @return one line per event, after a header line
+	 */
+	public static String decode(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Not a fixpoint trace");
+		}
+		StringBuilder ret = new StringBuilder();
+		String method = in.readUTF();
+		int unitCount = in.readInt();
+		long recorded = in.readLong();
+		int kept = in.readInt();
+		ret.append(method).append(": ").append(unitCount).append(" units, last ").append(kept).append(" of ").append(recorded)
+				.append(" events\n");
+		String[] names = { "?", "join", "flow", "widen", "stable" };
+		for (int n = 0; n < kept; n++) {
+			byte kind = in.readByte();
+			ret.append(kind > 0 && kind < names.length ? names[kind] : names[0]).append(" unit=").append(in.readInt())
+					.append(" edge=").append(in.readByte()).append(" size=").append(in.readInt()).append('\n');
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,111 @@
+package ch.ethz.rse.numerical;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import apron.Environment;
+import apron.Manager;
+
+/**
+ * Input/output relation of a method: relates the values of its integer
+ * parameters on entry ({@link NumericalAnalysis#ARGUMENT}) to its integer
+ * return value ({@link NumericalAnalysis#RETURN}). Bottom if the method never
+ * returns.
+ *
+ * Summaries are stored in the format of
+ * {@link NumericalStateWrapper#write(java.io.DataOutput)}, so they do not
+ * depend on an Apron manager and may be shared between threads.
+ */
+public final class MethodSummary {
+
+	private final byte[] bytes;
+
+	private MethodSummary(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 *
+	 * @param state state over the variables of the summary
+	 * @return the summary holding state
+	 */
+	public static MethodSummary of(NumericalStateWrapper state) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			state.write(out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new MethodSummary(bytes.toByteArray());
+	}
+
+	/**
+	 *
+	 * @param man manager to create the summary with
+	 * @param env variables of the summary
+	 * @return a summary relating nothing (e.g., for methods whose summary cannot
+	 *         be represented)
+	 */
+	public static MethodSummary top(Manager man, Environment env) {
+		return MethodSummary.of(NumericalStateWrapper.top(man, env));
+	}
+
+	/**
+	 *
+	 * @param man manager to create the summary with
+	 * @param env variables of the summary
+	 * @return the summary of a method that never returns
+	 */
+	public static MethodSummary bottom(Manager man, Environment env) {
+		return MethodSummary.of(NumericalStateWrapper.bottom(man, env));
+	}
+
+	/**
+	 *
+	 * @param bytes summary returned by {@link #getBytes()}
+	 */
+	public static MethodSummary fromBytes(byte[] bytes) {
+		return new MethodSummary(bytes);
+	}
+
+	/**
+	 *
+	 * @param man    manager to create the state with
+	 * @param prefix prefix to add to the names of all variables
+	 * @return this summary as a state
+	 */
+	public NumericalStateWrapper instantiate(Manager man, String prefix) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(this.bytes))) {
+			return NumericalStateWrapper.read(man, in, prefix);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @return this summary, in the format of
+	 *         {@link NumericalStateWrapper#write(java.io.DataOutput)}
+	 */
+	public byte[] getBytes() {
+		return this.bytes.clone();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof MethodSummary)) {
+			return false;
+		}
+		// same constraint system, not necessarily the only equal one
+		return Arrays.equals(this.bytes, ((MethodSummary) o).bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.bytes);
+	}
+}
@@ -0,0 +1,91 @@
+package ch.ethz.rse.numerical;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.ethz.rse.utils.Configuration;
+
+/**
+ * Native memory held by the Apron states of one verification task, charged
+ * and released by the {@link NativeScope}s of its analyses. Sizes are Apron's
+ * own estimates (see {@link apron.Abstract1#getSize(apron.Manager)}), whose
+ * unit is unspecified. Safe to update from multiple threads.
+ *
+ * The budget only does the accounting: releasing a size does not free the
+ * objects, which the garbage collector finalizes later (see
+ * {@link NativeScope}). Until then, the resident memory of the process does
+ * not drop, so the budget does not bound the native memory actually used.
+ */
+public class NativeBudget {
+
+	/**
+	 * Maximal size held at once (0: no limit)
+	 */
+	private final long limit;
+
+	private final AtomicLong held = new AtomicLong();
+
+	private final AtomicLong peak = new AtomicLong();
+
+	/**
+	 * Budget configured by {@link Configuration#getNativeMemoryBudget()}
+	 */
+	public NativeBudget() {
+		this(Configuration.props.getNativeMemoryBudget());
+	}
+
+	/**
+	 *
+	 * @param limit maximal size held at once (0: no limit)
+	 */
+	public NativeBudget(long limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Hold size more, unless this exceeds the limit
+	 *
+	 * @param size  size to hold
+	 * @param owner description of the states of size, for the error message
+	 */
+	void reserve(long size, String owner) {
+		long total = this.held.addAndGet(size);
+		if (this.limit > 0 && total > this.limit) {
+			this.held.addAndGet(-size);
+			throw new RuntimeException("Native memory budget of " + this.limit + " exceeded by " + owner + " (holding "
+					+ (total - size) + ", requested " + size + ")");
+		}
+		this.peak.accumulateAndGet(total, Math::max);
+	}
+
+	/**
+	 * Stop holding size, whose objects are no longer referenced (but not freed
+	 * yet)
+	 */
+	void release(long size) {
+		this.held.addAndGet(-size);
+	}
+
+	/**
+	 *
+	 * @return maximal size held at once (0: no limit)
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 *
+	 * @return size held now
+	 */
+	public long getHeld() {
+		return this.held.get();
+	}
+
+	/**
+	 *
+	 * @return maximal size held so far
+	 */
+	public long getPeak() {
+		return this.peak.get();
+	}
+}
@@ -0,0 +1,231 @@
+package ch.ethz.rse.numerical;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import apron.Abstract1;
+import apron.ApronException;
+import apron.Manager;
+
+/**
+ * Scope of the native Apron objects of one {@link NumericalAnalysis}: its
+ * manager, the abstract elements of its states, and the constraints and
+ * expressions of its transfer functions.
+ *
+ * Abstract elements are charged to the {@link NativeBudget} of the task as
+ * soon as the fixpoint engine stores them (see
+ * {@link #update(Object, NumericalStateWrapper)}), and released once no state
+ * of the analysis holds them anymore. Elements shared by several
+ * (copy-on-write) states are only charged once. Closing the scope releases
+ * all elements, except those retained by the caller (see
+ * {@link #retain(Iterable)}).
+ *
+ * The Apron Java binding only frees native objects in their finalizers, which
+ * are not public and must run exactly once, so a scope cannot free them
+ * itself: releasing an element drops the references of the analysis to it,
+ * and the garbage collector frees it later. Constraints and expressions
+ * ({@link apron.Lincons1}, {@link apron.Linexpr1}, {@link apron.Tcons1},
+ * {@link apron.Texpr1Intern}) have no size estimate, so they are only counted
+ * (see {@link #track(Object...)}).
+ */
+public class NativeScope implements AutoCloseable {
+
+	private final Manager man;
+
+	private final NativeBudget budget;
+
+	/**
+	 * Description of the states of this scope, for error messages
+	 */
+	private final String owner;
+
+	/**
+	 * Element held by each slot, i.e., by each state of the fixpoint engine
+	 */
+	private final Map<Object, Abstract1> slots = new IdentityHashMap<Object, Abstract1>();
+
+	/**
+	 * Size charged for each element held by a slot, and number of slots holding
+	 * it
+	 */
+	private final Map<Abstract1, long[]> elements = new IdentityHashMap<Abstract1, long[]>();
+
+	/**
+	 * Elements kept after closing, and their charged size
+	 */
+	private final Map<Abstract1, Long> retained = new IdentityHashMap<Abstract1, Long>();
+
+	/**
+	 * Number of constraints and expressions created, by class
+	 */
+	private final SortedMap<String, Long> tracked = new TreeMap<String, Long>();
+
+	/**
+	 * Size charged to {@link #budget} and not released yet
+	 */
+	private long charged = 0;
+
+	private boolean closed = false;
+
+	/**
+	 *
+	 * @param man    manager creating the objects of this scope
+	 * @param budget budget to charge the states of this scope to
+	 * @param owner  description of the states of this scope, e.g., the
+	 *               signature of the analyzed method
+	 */
+	public NativeScope(Manager man, NativeBudget budget, String owner) {
+		this.man = man;
+		this.budget = budget;
+		this.owner = owner;
+	}
+
+	/**
+	 *
+	 * @return manager creating the objects of this scope
+	 */
+	public Manager getManager() {
+		return this.man;
+	}
+
+	/**
+	 * Charge the element now held by state in slot, and release the element it
+	 * held before if no other slot holds it
+	 *
+	 * @param slot  identifies the state, e.g., a unit for the state before it
+	 * @param state state created by {@link #man}
+	 * @throws RuntimeException if the budget is exceeded
+	 */
+	void update(Object slot, NumericalStateWrapper state) {
+		Abstract1 elem = state.get();
+		Abstract1 old = this.slots.put(slot, elem);
+		if (old == elem) {
+			// modified in place, which copy-on-write only allows if unshared
+			long[] entry = this.elements.get(elem);
+			long size = this.getSize(elem);
+			this.charge(size - entry[0]);
+			entry[0] = size;
+			return;
+		}
+		if (old != null) {
+			this.drop(old);
+		}
+		long[] entry = this.elements.get(elem);
+		if (entry == null) {
+			long size = this.getSize(elem);
+			this.charge(size);
+			this.elements.put(elem, new long[] { size, 1 });
+		} else {
+			entry[1]++;
+		}
+	}
+
+	private void drop(Abstract1 elem) {
+		long[] entry = this.elements.get(elem);
+		if (--entry[1] == 0) {
+			this.elements.remove(elem);
+			this.budget.release(entry[0]);
+			this.charged -= entry[0];
+		}
+	}
+
+	private void charge(long size) {
+		if (size > 0) {
+			this.budget.reserve(size, this.owner);
+		} else {
+			this.budget.release(-size);
+		}
+		this.charged += size;
+	}
+
+	private long getSize(Abstract1 elem) {
+		try {
+			return elem.getSize(this.man);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Count constraints or expressions created for the analysis
+	 */
+	void track(Object... objects) {
+		for (Object o : objects) {
+			this.tracked.merge(o.getClass().getSimpleName(), 1L, Long::sum);
+		}
+	}
+
+	/**
+	 * Keep states charged after closing, as the caller keeps referencing them.
+	 * States not held by a slot (e.g., projections) are charged now.
+	 *
+	 * @param states states created by {@link #man}
+	 * @throws RuntimeException if the budget is exceeded
+	 */
+	public void retain(Iterable<NumericalStateWrapper> states) {
+		for (NumericalStateWrapper state : states) {
+			Abstract1 elem = state.get();
+			if (this.retained.containsKey(elem)) {
+				continue;
+			}
+			long[] entry = this.elements.get(elem);
+			long size;
+			if (entry != null) {
+				size = entry[0];
+			} else {
+				size = this.getSize(elem);
+				this.charge(size);
+			}
+			this.retained.put(elem, size);
+		}
+	}
+
+	/**
+	 *
+	 * @return size charged to the budget by this scope and not released yet
+	 */
+	public long getCharged() {
+		return this.charged;
+	}
+
+	/**
+	 *
+	 * @return number of abstract elements currently held by the states of this
+	 *         scope
+	 */
+	public int getElementCount() {
+		return this.elements.size();
+	}
+
+	/**
+	 *
+	 * @return number of constraints and expressions created, by class
+	 */
+	public SortedMap<String, Long> getTracked() {
+		return Collections.unmodifiableSortedMap(this.tracked);
+	}
+
+	/**
+	 * Release everything charged by this scope, except retained states. The
+	 * states of this scope must no longer be referenced, except for retained
+	 * ones.
+	 */
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		long kept = 0;
+		for (long size : this.retained.values()) {
+			kept += size;
+		}
+		this.budget.release(this.charged - kept);
+		this.charged = kept;
+		this.slots.clear();
+		this.elements.clear();
+	}
+}
@@ -1,8 +1,16 @@
 package ch.ethz.rse.numerical;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.RuntimeErrorException;
@@ -14,9 +22,11 @@ import apron.Abstract1;
 import apron.ApronException;
 import apron.Environment;
 import apron.Interval;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
 import apron.Manager;
 import apron.MpqScalar;
-import apron.Polka;
 import apron.Tcons1;
 import apron.Texpr1BinNode;
 import apron.Texpr1CstNode;
@@ -24,15 +34,17 @@ import apron.Texpr1Intern;
 import apron.Texpr1Node;
 import apron.Texpr1VarNode;
 import apron.Var;
-import ch.ethz.rse.VerificationProperty;
 import ch.ethz.rse.pointer.EventInitializer;
 import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.utils.Configuration;
 import ch.ethz.rse.utils.Constants;
 import ch.ethz.rse.verify.EnvironmentGenerator;
 import soot.ArrayType;
 import soot.DoubleType;
+import soot.IntegerType;
 import soot.Local;
 import soot.RefType;
+import soot.Scene;
 import soot.SootHelper;
 import soot.SootMethod;
 import soot.Unit;
@@ -46,6 +58,7 @@ import soot.jimple.IntConstant;
 import soot.jimple.InvokeExpr;
 import soot.jimple.MulExpr;
 import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
 import soot.jimple.Stmt;
 import soot.jimple.SubExpr;
 import soot.jimple.internal.AbstractBinopExpr;
@@ -62,27 +75,40 @@ import soot.jimple.internal.JLeExpr;
 import soot.jimple.internal.JLtExpr;
 import soot.jimple.internal.JMulExpr;
 import soot.jimple.internal.JNeExpr;
+import soot.jimple.internal.JReturnStmt;
 import soot.jimple.internal.JReturnVoidStmt;
 import soot.jimple.internal.JSpecialInvokeExpr;
+import soot.jimple.internal.JStaticInvokeExpr;
 import soot.jimple.internal.JSubExpr;
 import soot.jimple.internal.JVirtualInvokeExpr;
 import soot.jimple.internal.JimpleLocal;
-import soot.jimple.toolkits.annotation.logic.Loop;
-import soot.toolkits.graph.LoopNestTree;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.toolkits.graph.DirectedGraph;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.ForwardBranchedFlowAnalysis;
 
 /**
  * Convenience class running a numerical analysis on a given {@link SootMethod}
  */
-public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStateWrapper> {
+public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStateWrapper> implements AutoCloseable {
 
 	private static final Logger logger = LoggerFactory.getLogger(NumericalAnalysis.class);
 
 	/**
-	 * the property we are verifying
+	 * Prefix of the variables holding the values of integer parameters on entry,
+	 * followed by the index of the parameter (only used with summaries)
 	 */
-	private final VerificationProperty property;
+	public static final String ARGUMENT = "@arg";
+
+	/**
+	 * Variable holding the integer return value (only used with summaries)
+	 */
+	public static final String RETURN = "@ret";
+
+	/**
+	 * Prefix of the variables of a callee summary at a call site
+	 */
+	private static final String CALL = "@call";
 
 	/**
 	 * the pointer analysis result we are verifying
@@ -95,61 +121,421 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 	private Set<EventInitializer> alreadyInit;
 
 	/**
-	 * number of times this loop head was encountered during analysis
+	 * Manager of the numerical abstract domain to use for analysis. Every
+	 * analysis has its own manager, so analyses may run on different threads.
 	 */
-	private HashMap<Unit, IntegerWrapper> loopHeads = new HashMap<Unit, IntegerWrapper>();
+	public final Manager man;
+
 	/**
-	 * Previously seen abstract state for each loop head
+	 * Native objects created by {@link #man}
 	 */
-	private HashMap<Unit, NumericalStateWrapper> loopHeadState = new HashMap<Unit, NumericalStateWrapper>();
+	private final NativeScope scope;
+
+	public final Environment env;
 
 	/**
-	 * Numerical abstract domain to use for analysis: Convex polyhedra
+	 * Variables tracked in {@link #env}
 	 */
-	public final Manager man = new Polka(true);
+	private final EnvironmentGenerator environment;
 
-	public final Environment env;
+	/**
+	 * Analyzed method
+	 */
+	private final SootMethod method;
+
+	/**
+	 * Summaries of the methods called by {@link #method}, or null to analyze
+	 * {@link #method} in isolation (the results of all calls are unknown)
+	 */
+	private final Map<SootMethod, MethodSummary> summaries;
+
+	/**
+	 * Units whose states are computed: the cone of the queries (see
+	 * {@link Configuration#getDemandDriven()}), or the whole graph
+	 */
+	private final DirectedGraph<Unit> region;
 
 	/**
-	 * We apply widening after updating the state at a given merge point for the
-	 * {@link WIDENING_THRESHOLD}th time
+	 * Recorder of the most recent events of the fixpoint computation, or null if
+	 * disabled (see {@link Configuration#getFixpointTrace()})
 	 */
-	private static final int WIDENING_THRESHOLD = 6;
+	private final FixpointTrace trace;
 
 	/**
-	 * List of loops
+	 * Transfer function of a single unit
 	 */
-	private HashSet<Loop> loops;
+	interface TransferFunction {
+
+		/**
+		 * 
+		 * @param fallOut   state after falling out of the unit, holding the state
+		 *                  before it (null if the unit does not fall through)
+		 * @param branchOut state after branching, holding the state before the unit
+		 *                  (null if the unit does not branch)
+		 */
+		void apply(NumericalStateWrapper fallOut, NumericalStateWrapper branchOut) throws ApronException;
+	}
+
+	private static final TransferFunction IDENTITY = (fallOut, branchOut) -> {
+	};
+
+	/**
+	 * Transfer function of every unit visited so far, compiled on the first
+	 * visit
+	 */
+	private final Map<Unit, TransferFunction> transferFunctions = new IdentityHashMap<Unit, TransferFunction>();
+
+	/**
+	 * Number of transfer function applications until the fixpoint was reached
+	 */
+	private int flowThroughCount;
+
+	/**
+	 * Number of widenings applied until the fixpoint was reached
+	 */
+	private int wideningCount;
+
+	/**
+	 * Number of joins of predecessor states until the fixpoint was reached
+	 */
+	private int mergeCount;
+
+	/**
+	 * Time spent generating {@link #env}, and computing the fixpoint
+	 */
+	private long environmentNanos;
+
+	private long fixpointNanos;
+
+	/**
+	 * Size of all states at the fixpoint, and number of abstract elements they
+	 * hold, as charged to {@link #scope}
+	 */
+	private long stateSize;
+
+	private int elementCount;
 
 	/**
 	 * 
 	 * @param method   method to analyze
-	 * @param property the property we are verifying
+	 * @param pointsTo the pointer analysis result for the class of method
+	 * @param domain   the numerical abstract domain to use
 	 */
-	public NumericalAnalysis(SootMethod method, VerificationProperty property, PointsToInitializer pointsTo) {
+	public NumericalAnalysis(SootMethod method, PointsToInitializer pointsTo, AbstractDomain domain) {
+		this(method, pointsTo, domain, null);
+	}
+
+	/**
+	 * 
+	 * @param method    method to analyze
+	 * @param pointsTo  the pointer analysis result for the class of method
+	 * @param domain    the numerical abstract domain to use
+	 * @param summaries summaries of the methods called by method (methods
+	 *                  without summary are treated as unknown), or null to
+	 *                  analyze method in isolation
+	 */
+	public NumericalAnalysis(SootMethod method, PointsToInitializer pointsTo, AbstractDomain domain,
+			Map<SootMethod, MethodSummary> summaries) {
+		this(method, pointsTo, domain, summaries, new NativeBudget());
+	}
+
+	/**
+	 * 
+	 * @param method    method to analyze
+	 * @param pointsTo  the pointer analysis result for the class of method
+	 * @param domain    the numerical abstract domain to use
+	 * @param summaries summaries of the methods called by method (methods
+	 *                  without summary are treated as unknown), or null to
+	 *                  analyze method in isolation
+	 * @param budget    budget to charge the states of this analysis to, until
+	 *                  it is closed
+	 */
+	public NumericalAnalysis(SootMethod method, PointsToInitializer pointsTo, AbstractDomain domain,
+			Map<SootMethod, MethodSummary> summaries, NativeBudget budget) {
+		this(method, pointsTo, domain, summaries, budget, NumericalAnalysis.getCone(method, pointsTo, summaries), null);
+	}
+
+	/**
+	 * 
+	 * @param method      method to analyze
+	 * @param pointsTo    the pointer analysis result for the class of method
+	 * @param domain      the numerical abstract domain to use
+	 * @param summaries   summaries of the methods called by method (methods
+	 *                    without summary are treated as unknown), or null to
+	 *                    analyze method in isolation
+	 * @param budget      budget to charge the states of this analysis to, until
+	 *                    it is closed
+	 * @param cone        units whose states are computed (see
+	 *                    {@link #getCone(SootMethod, PointsToInitializer, Map)}),
+	 *                    or null for all units
+	 * @param environment variables to track, generated for cone and summaries,
+	 *                    or null to generate them here
+	 */
+	public NumericalAnalysis(SootMethod method, PointsToInitializer pointsTo, AbstractDomain domain,
+			Map<SootMethod, MethodSummary> summaries, NativeBudget budget, QueryCone cone,
+			EnvironmentGenerator environment) {
 		super(SootHelper.getUnitGraph(method));
 
-		UnitGraph g = SootHelper.getUnitGraph(method);
+		// reject unsupported statements even outside of the cone
+		NumericalAnalysis.validate(method);
 
-		this.property = property;
+		this.scope = new NativeScope(domain.createManager(), budget, method.getSignature());
+		this.man = this.scope.getManager();
 
 		this.pointsTo = pointsTo;
 
 		this.alreadyInit = new HashSet<EventInitializer>();
 
-		this.env = new EnvironmentGenerator(method, pointsTo).getEnvironment();
-
-		loops = new HashSet<Loop>();
+		this.method = method;
+		this.summaries = summaries;
 
-		// initialize counts for loop heads
-		for (Loop l : new LoopNestTree(g.getBody())) {
-			loopHeads.put(l.getHead(), new IntegerWrapper(0));
-			loops.add(l);
+		long startTime = System.nanoTime();
+		if (cone != null) {
+			logger.debug("Evaluating {} of {} units of {}", cone.size(), this.graph.size(), method.getName());
+			this.region = cone;
+		} else {
+			this.region = this.graph;
+		}
+		if (environment == null) {
+			environment = new EnvironmentGenerator(method, pointsTo, summaries != null, cone);
 		}
+		this.environment = environment;
+		this.env = this.environment.getEnvironment();
+		this.environmentNanos = System.nanoTime() - startTime;
+
+		int traceCapacity = Configuration.props.getFixpointTrace();
+		this.trace = traceCapacity > 0 ? new FixpointTrace(method.getSignature(), (UnitGraph) this.graph, this.man, traceCapacity) : null;
 
 		// perform analysis by calling into super-class
-		logger.info("Analyzing {} in {}", method.getName(), method.getDeclaringClass().getName());
-		doAnalysis(); // calls newInitialFlow, entryInitialFlow, merge, flowThrough, and stops when a fixed point is reached
+		logger.debug("Analyzing {} in {}", method.getName(), method.getDeclaringClass().getName());
+		startTime = System.nanoTime();
+		try {
+			doAnalysis(); // calls newInitialFlow, entryInitialFlow, merge, flowThrough, and stops when a fixed point is reached
+		} catch (RuntimeException e) {
+			this.dumpTrace();
+			this.close();
+			throw e;
+		}
+		this.fixpointNanos = System.nanoTime() - startTime;
+		this.stateSize = this.scope.getCharged();
+		this.elementCount = this.scope.getElementCount();
+		logger.debug("Fixpoint of {} reached after {} transfer function applications and {} widenings", method.getName(),
+				this.flowThroughCount, this.wideningCount);
+	}
+
+	/**
+	 * 
+	 * @param method    method to analyze
+	 * @param pointsTo  the pointer analysis result for the class of method
+	 * @param summaries summaries of the methods called by method, or null
+	 * @return the cone of the queries of method if the analysis is demand-driven
+	 *         (see {@link Configuration#getDemandDriven()}), or null
+	 */
+	public static QueryCone getCone(SootMethod method, PointsToInitializer pointsTo, Map<SootMethod, MethodSummary> summaries) {
+		if (!Configuration.props.getDemandDriven()) {
+			return null;
+		}
+		return QueryCone.of(SootHelper.getUnitGraph(method), pointsTo.getIndex(method), summaries != null);
+	}
+
+	/**
+	 * Compute the fixpoint along a weak topological order of the graph, see
+	 * {@link FixpointEngine}
+	 */
+	@Override
+	protected void doAnalysis() {
+		FixpointEngine engine = new FixpointEngine(this, (UnitGraph) this.graph, this.region, Configuration.props.getWideningDelay(),
+				Configuration.props.getNarrowingPasses(), this.unitToBeforeFlow, this.unitToAfterFallFlow,
+				this.unitToAfterBranchFlow, this.trace, this.scope);
+		engine.solve();
+		this.flowThroughCount = engine.getFlowThroughCount();
+		this.wideningCount = engine.getWideningCount();
+		this.mergeCount = engine.getMergeCount();
+	}
+
+	/**
+	 * Drop the states of all units and the compiled transfer functions, e.g.,
+	 * once the states needed by the checks and the summary were extracted.
+	 * Afterwards, {@link #getFlowBefore(Object)} and
+	 * {@link #getFallFlowAfter(Object)} return null.
+	 */
+	public void release() {
+		this.unitToBeforeFlow.clear();
+		this.unitToAfterFallFlow.clear();
+		this.unitToAfterBranchFlow.clear();
+		this.transferFunctions.clear();
+	}
+
+	/**
+	 * Keep states of this analysis charged to its budget after it is closed
+	 * 
+	 * @param states states the caller keeps, e.g., projected query states
+	 */
+	public void retain(Iterable<NumericalStateWrapper> states) {
+		this.scope.retain(states);
+	}
+
+	/**
+	 * Release all states (see {@link #release()}) and close {@link #scope}.
+	 * Only states passed to {@link #retain(Iterable)} may be used afterwards.
+	 */
+	@Override
+	public void close() {
+		this.release();
+		this.scope.close();
+	}
+
+	/**
+	 * 
+	 * @return the recorder of the most recent events of the fixpoint
+	 *         computation, or null if disabled
+	 */
+	public FixpointTrace getTrace() {
+		return this.trace;
+	}
+
+	/**
+	 * Write the events kept by {@link #trace} (if enabled) to a file in
+	 * {@link Configuration#getFixpointTraceDirectory()}
+	 * 
+	 * @return the written file, or null if there is none
+	 */
+	public File dumpTrace() {
+		if (this.trace == null) {
+			return null;
+		}
+		String name = this.method.getSignature().replaceAll("[^A-Za-z0-9._-]", "_") + ".trace";
+		File file = new File(Configuration.props.getFixpointTraceDirectory(), name);
+		try {
+			this.trace.dump(file);
+			logger.info("Wrote fixpoint trace of {} to {}", this.method.getName(), file);
+			return file;
+		} catch (IOException e) {
+			logger.error("Error writing fixpoint trace to {}: {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * 
+	 * @return number of transfer function applications until the fixpoint was
+	 *         reached
+	 */
+	public int getFlowThroughCount() {
+		return this.flowThroughCount;
+	}
+
+	/**
+	 * 
+	 * @return number of widenings applied until the fixpoint was reached
+	 */
+	public int getWideningCount() {
+		return this.wideningCount;
+	}
+
+	/**
+	 * 
+	 * @return number of joins of predecessor states until the fixpoint was
+	 *         reached
+	 */
+	public int getMergeCount() {
+		return this.mergeCount;
+	}
+
+	/**
+	 * 
+	 * @return number of units whose states were computed
+	 */
+	public int getUnitCount() {
+		return this.region.size();
+	}
+
+	/**
+	 * 
+	 * @return number of integer variables of the analyzed method, tracked in
+	 *         {@link #env} or not
+	 */
+	public int getVariableCount() {
+		return this.environment.getVariableCount();
+	}
+
+	/**
+	 * 
+	 * @return time spent generating the environment, in nanoseconds
+	 */
+	public long getEnvironmentNanos() {
+		return this.environmentNanos;
+	}
+
+	/**
+	 * 
+	 * @return time spent computing the fixpoint, in nanoseconds
+	 */
+	public long getFixpointNanos() {
+		return this.fixpointNanos;
+	}
+
+	/**
+	 * 
+	 * @return total size of all states at the fixpoint, as estimated by Apron
+	 */
+	public long getStateSize() {
+		return this.stateSize;
+	}
+
+	/**
+	 * 
+	 * @return number of abstract elements held by the states at the fixpoint
+	 */
+	public int getElementCount() {
+		return this.elementCount;
+	}
+
+	/**
+	 * 
+	 * @return number of constraints and expressions created by this analysis,
+	 *         by class
+	 */
+	public Map<String, Long> getNativeObjects() {
+		return this.scope.getTracked();
+	}
+
+	/**
+	 * 
+	 * @return the input/output relation of the analyzed method, i.e., the join of
+	 *         the states at all return statements, projected to the variables of
+	 *         {@link EnvironmentGenerator#getSummaryVariables(SootMethod)}
+	 */
+	public MethodSummary getSummary() {
+		Environment summaryEnv = new Environment(EnvironmentGenerator.getSummaryVariables(this.method), new String[] {});
+
+		NumericalStateWrapper summary = NumericalStateWrapper.bottom(man, env);
+		for (Unit u : this.graph) {
+			if (!(u instanceof ReturnStmt || u instanceof JReturnVoidStmt)) {
+				continue;
+			}
+			NumericalStateWrapper returned = NumericalStateWrapper.bottom(man, env);
+			this.getFlowBefore(u).copyInto(returned);
+			if (u instanceof ReturnStmt && env.hasVar(RETURN)) {
+				Value op = ((ReturnStmt) u).getOp();
+				if (op instanceof IntConstant || (op instanceof Local && this.environment.isTracked((Local) op))) {
+					Texpr1Intern returnedIntern = new Texpr1Intern(env, compileExpression(op));
+					this.scope.track(returnedIntern);
+					returned.assign(RETURN, returnedIntern);
+				}
+			}
+			summary.join(returned);
+		}
+
+		try {
+			Abstract1 projected = summary.get().changeEnvironmentCopy(man, summaryEnv, false);
+			return MethodSummary.of(new NumericalStateWrapper(man, projected));
+		} catch (UnsupportedOperationException e) {
+			logger.debug("Cannot summarize {}: {}", this.method.getName(), e.getMessage());
+			return MethodSummary.top(man, summaryEnv);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -198,62 +584,10 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 
 	@Override
 	protected void merge(Unit succNode, NumericalStateWrapper w1, NumericalStateWrapper w2, NumericalStateWrapper w3) {
-		// merge the two states from w1 and w2 and store the result into w3
-		logger.debug("in merge: " + succNode);
-
-		Abstract1 a1 = w1.get();
-		Abstract1 a2 = w2.get();
-
-		try {
-			a1.join(man, a2);
-		} catch (ApronException e) {
-			e.printStackTrace();
-			throw new RuntimeException("should not be here");
-		}
-
-		w3.set(a1);
-
-
-		Loop loop = null;
-
-		for (Loop l : loops) {
-			if (l.getLoopStatements().contains(succNode)) {
-				loop = l;
-				break;
-			}
-		}
-
-		if (loop == null) {
-			logger.debug("No loop found for " + succNode);
-			return;
-		}
-
-		logger.debug("Loop found for " + succNode);
-
-		Unit loopHead = loop.getHead();
-		// increase loophead for this unit
-		IntegerWrapper currentCount = loopHeads.get(loopHead);
-		currentCount.value = currentCount.value + 1;
-		loopHeads.put(loopHead, currentCount);
-
-		NumericalStateWrapper oldState = loopHeadState.get(loopHead);
-		loopHeadState.put(loopHead, w3);
-
-		if (currentCount.value < WIDENING_THRESHOLD) {
-			return;
-		}
-
-		Abstract1 widened = null;
-
-		logger.debug("WIDENING");
-		try {
-			widened = a1.widening(man, oldState.get());
-		} catch (ApronException e) {
-			e.printStackTrace();
-			throw new RuntimeException("should not be here");
-		}
-
-		w3.set(widened);
+		// merge the two states from w1 and w2 and store the result into w3.
+		// Widening is applied by the FixpointEngine, at loop heads only
+		w1.copyInto(w3);
+		w3.join(w2);
 	}
 
 	@Override
@@ -265,7 +599,7 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 	@Override
 	protected void flowThrough(NumericalStateWrapper inWrapper, Unit op, List<NumericalStateWrapper> fallOutWrappers,
 			List<NumericalStateWrapper> branchOutWrappers) {
-		logger.debug(inWrapper + " " + op + " => ?");
+		logger.debug("{} {} => ?", inWrapper, op);
 
 		Stmt s = (Stmt) op;
 
@@ -294,86 +628,19 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 		}
 
 		try {
-			if (s instanceof DefinitionStmt) {
-				// handle assignment
-
-				DefinitionStmt sd = (DefinitionStmt) s;
-				Value left = sd.getLeftOp();
-				Value right = sd.getRightOp();
-
-				// We are not handling these cases:
-				if (!(left instanceof JimpleLocal)) {
-					unhandled("Assignment to non-local variable", left, true);
-				} else if (left instanceof JArrayRef) {
-					unhandled("Assignment to a non-local array variable", left, true);
-				} else if (left.getType() instanceof ArrayType) {
-					unhandled("Assignment to Array", left, true);
-				} else if (left.getType() instanceof DoubleType) {
-					unhandled("Assignment to double", left, true);
-				} else if (left instanceof JInstanceFieldRef) {
-					unhandled("Assignment to field", left, true);
-				}
-
-				if (left.getType() instanceof RefType) {
-					// assignments to references are handled by pointer analysis
-					// no action necessary
-				} else {
-					// handle assignment
-					handleDef(fallOutWrapper, left, right);
-				}
-
-			} else if (s instanceof JIfStmt) {
-				// handle if
-
-				JIfStmt ifStmt = (JIfStmt) s;
-				Value condition = ifStmt.getCondition();
-				Tcons1[] constrs = compileCondition(condition);
-				Tcons1[] inCons = new Tcons1[]{ constrs[0] };
-
-				// if it is a not constrain
-				if (constrs.length == 3) {
-					inCons = new Tcons1[] { constrs[0], constrs[2] };
-				}
-
-				Abstract1 branchIn = new Abstract1(man, inCons);
-				Abstract1 branchOut = new Abstract1(man, new Tcons1[]{constrs[1]});
-
-				// case if is false then skip
-				Abstract1 fallOut = fallOutWrapper.get();
-				fallOut.meet(man, branchOut);
-				fallOutWrapper.set(fallOut);
-
-				// case if is true then enter branch
-				Abstract1 branch = branchOutWrapper.get();
-				branch.meet(man, branchIn);
-				branchOutWrapper.set(branch);
-
-			} else if (s instanceof JInvokeStmt) {
-				// handle invocations
-				JInvokeStmt jInvStmt = (JInvokeStmt) s;
-				InvokeExpr invokeExpr = jInvStmt.getInvokeExpr();
-				if (invokeExpr instanceof JVirtualInvokeExpr) {
-					handleInvoke(jInvStmt, fallOutWrapper);
-				} else if (invokeExpr instanceof JSpecialInvokeExpr) {
-					// initializer for object
-					handleInitialize(jInvStmt, fallOutWrapper);
-				} else {
-					unhandled("Unhandled invoke statement", invokeExpr, true);
-				}
-			} else if (s instanceof JGotoStmt) {
-				// safe to ignore
-			} else if (s instanceof JReturnVoidStmt) {
-				// safe to ignore
-			} else {
-				unhandled("Unhandled statement", s, true);
+			TransferFunction transfer = this.transferFunctions.get(op);
+			if (transfer == null) {
+				transfer = this.compile(s);
+				this.transferFunctions.put(op, transfer);
 			}
+			transfer.apply(fallOutWrapper, branchOutWrapper);
 
 			// log outcome
 			if (fallOutWrapper != null) {
-				logger.debug(inWrapper.get() + " " + s + " =>[fallout] " + fallOutWrapper);
+				logger.debug("{} {} =>[fallout] {}", inWrapper, s, fallOutWrapper);
 			}
 			if (branchOutWrapper != null) {
-				logger.debug(inWrapper.get() + " " + s + " =>[branchout] " + branchOutWrapper);
+				logger.debug("{} {} =>[branchout] {}", inWrapper, s, branchOutWrapper);
 			}
 
 		} catch (ApronException e) {
@@ -381,6 +648,118 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 		}
 	}
 
+	/**
+	 * 
+	 * @return the transfer function of s, with all expressions and constraints
+	 *         it applies built once
+	 */
+	private TransferFunction compile(Stmt s) {
+		NumericalAnalysis.validate(s);
+		if (s instanceof DefinitionStmt) {
+			// handle assignment
+
+			DefinitionStmt sd = (DefinitionStmt) s;
+			Value left = sd.getLeftOp();
+			Value right = sd.getRightOp();
+
+			boolean isTracked = left.getType() instanceof IntegerType && this.environment.isTracked((Local) left);
+			if (right instanceof InvokeExpr) {
+				// call to another method (Event only has void methods)
+				String result = isTracked ? ((Local) left).getName() : null;
+				return (fallOut, branchOut) -> this.handleCall(fallOut, s, result, (InvokeExpr) right);
+			} else if (left.getType() instanceof RefType) {
+				// assignments to references are handled by pointer analysis
+				// no action necessary
+				return IDENTITY;
+			} else if (!this.environment.isTracked((Local) left)) {
+				// cannot influence the verified properties, see
+				// EnvironmentGenerator
+				return IDENTITY;
+			} else {
+				// handle assignment
+				return this.compileDef(left, right);
+			}
+
+		} else if (s instanceof JIfStmt) {
+			// handle if
+			return this.compileIf(((JIfStmt) s).getCondition(), true);
+
+		} else if (s instanceof JInvokeStmt) {
+			// handle invocations
+			JInvokeStmt jInvStmt = (JInvokeStmt) s;
+			InvokeExpr invokeExpr = jInvStmt.getInvokeExpr();
+			if (invokeExpr instanceof JVirtualInvokeExpr) {
+				Value base = ((JVirtualInvokeExpr) invokeExpr).getBase();
+				if (base.getType().toString().equals(Constants.EventClassName)) {
+					return (fallOut, branchOut) -> this.handleInvoke(jInvStmt, fallOut);
+				} else {
+					return (fallOut, branchOut) -> this.handleCall(fallOut, s, null, invokeExpr);
+				}
+			} else if (invokeExpr instanceof JSpecialInvokeExpr) {
+				// initializer for object
+				return (fallOut, branchOut) -> this.handleInitialize(jInvStmt, fallOut);
+			} else if (invokeExpr instanceof JStaticInvokeExpr) {
+				return (fallOut, branchOut) -> this.handleCall(fallOut, s, null, invokeExpr);
+			}
+		} else if (s instanceof JGotoStmt) {
+			// safe to ignore
+			return IDENTITY;
+		} else if (s instanceof JReturnVoidStmt) {
+			// safe to ignore
+			return IDENTITY;
+		} else if (s instanceof JReturnStmt) {
+			// safe to ignore (returned values are read by getSummary)
+			return IDENTITY;
+		}
+		// rejected by validate
+		throw new IllegalStateException("unreachable");
+	}
+
+	/**
+	 * Reject the statements of method the analysis cannot handle, whether or not
+	 * it would reach them, e.g., before deciding properties without analysis
+	 *
+	 * @throws UnsupportedOperationException for the first such statement
+	 */
+	public static void validate(SootMethod method) {
+		for (Unit u : method.getActiveBody().getUnits()) {
+			NumericalAnalysis.validate((Stmt) u);
+		}
+	}
+
+	/**
+	 * Reject s if the analysis cannot handle it
+	 *
+	 * @throws UnsupportedOperationException if the analysis cannot handle s
+	 */
+	private static void validate(Stmt s) {
+		if (s instanceof DefinitionStmt) {
+			Value left = ((DefinitionStmt) s).getLeftOp();
+
+			// We are not handling these cases:
+			if (!(left instanceof JimpleLocal)) {
+				unhandled("Assignment to non-local variable", left, true);
+			} else if (left instanceof JArrayRef) {
+				unhandled("Assignment to a non-local array variable", left, true);
+			} else if (left.getType() instanceof ArrayType) {
+				unhandled("Assignment to Array", left, true);
+			} else if (left.getType() instanceof DoubleType) {
+				unhandled("Assignment to double", left, true);
+			} else if (left instanceof JInstanceFieldRef) {
+				unhandled("Assignment to field", left, true);
+			}
+		} else if (s instanceof JInvokeStmt) {
+			InvokeExpr invokeExpr = ((JInvokeStmt) s).getInvokeExpr();
+			if (!(invokeExpr instanceof JVirtualInvokeExpr || invokeExpr instanceof JSpecialInvokeExpr
+					|| invokeExpr instanceof JStaticInvokeExpr)) {
+				unhandled("Unhandled invoke statement", invokeExpr, true);
+			}
+		} else if (!(s instanceof JIfStmt || s instanceof JGotoStmt || s instanceof JReturnVoidStmt
+				|| s instanceof JReturnStmt)) {
+			unhandled("Unhandled statement", s, true);
+		}
+	}
+
 	public void handleInvoke(JInvokeStmt jInvStmt, NumericalStateWrapper fallOutWrapper) throws ApronException {
 		// TODO: MAYBE FILL THIS OUT
 	}
@@ -389,20 +768,266 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 		// TODO: MAYBE FILL THIS OUT
 	}
 
-	// returns state of in after assignment
-	private void handleDef(NumericalStateWrapper outWrapper, Value left, Value right) throws ApronException {
-		// skip function paramenters because they are unknown
-		if (right instanceof ParameterRef) {
+	/**
+	 * Apply the summaries of all possible targets of a call, joining the results.
+	 * If a target has no summary (e.g., without summaries), the result of the
+	 * call is unknown.
+	 * 
+	 * @param result name of the variable receiving the result of the call, or
+	 *               null if the result is not tracked
+	 */
+	private void handleCall(NumericalStateWrapper outWrapper, Unit call, String result, InvokeExpr invokeExpr) throws ApronException {
+		List<MethodSummary> callees = new ArrayList<MethodSummary>();
+		boolean unknown = this.summaries == null;
+		if (!unknown) {
+			Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(call);
+			unknown = !edges.hasNext();
+			while (edges.hasNext()) {
+				MethodSummary summary = this.summaries.get(edges.next().tgt());
+				if (summary == null) {
+					unknown = true;
+				}
+				callees.add(summary);
+			}
+		}
+
+		if (unknown) {
+			if (result != null) {
+				outWrapper.forget(result);
+			}
 			return;
 		}
 
-		Abstract1 curr = outWrapper.get();
+		Abstract1 joined = null;
+		for (MethodSummary summary : callees) {
+			Abstract1 out = this.applySummary(outWrapper.get(), summary, invokeExpr, result);
+			if (joined == null) {
+				joined = out;
+			} else {
+				joined.join(man, out);
+			}
+		}
+		outWrapper.set(joined);
+	}
+
+	/**
+	 * 
+	 * @return the state after a call with the given summary in state in
+	 */
+	private Abstract1 applySummary(Abstract1 in, MethodSummary summary, InvokeExpr invokeExpr, String result) throws ApronException {
+		Abstract1 callee = summary.instantiate(man, CALL).get();
+		Environment joint = env.lce(callee.getEnvironment());
+
+		Abstract1 out = in.changeEnvironmentCopy(man, joint, false);
+		out.meet(man, callee.changeEnvironmentCopy(man, joint, false));
+
+		// bind parameters to arguments
+		List<Tcons1> bindings = new ArrayList<Tcons1>();
+		for (int k = 0; k < invokeExpr.getArgCount(); k++) {
+			String param = CALL + ARGUMENT + k;
+			Value arg = invokeExpr.getArg(k);
+			boolean known = arg instanceof IntConstant || (arg instanceof Local && this.environment.isTracked((Local) arg));
+			if (known && joint.hasVar(param)) {
+				Texpr1Node diff = new Texpr1BinNode(Texpr1BinNode.OP_SUB, Texpr1BinNode.RTYPE_INT, Texpr1BinNode.RDIR_ZERO,
+						new Texpr1VarNode(param), compileExpression(arg));
+				bindings.add(new Tcons1(joint, Tcons1.EQ, diff));
+			}
+		}
+		Tcons1[] bindingCons = bindings.toArray(new Tcons1[bindings.size()]);
+		this.scope.track((Object[]) bindingCons);
+		out.meet(man, bindingCons);
+
+		if (result != null) {
+			if (joint.hasVar(CALL + RETURN)) {
+				Texpr1Intern resultIntern = new Texpr1Intern(joint, new Texpr1VarNode(CALL + RETURN));
+				this.scope.track(resultIntern);
+				out.assign(man, result, resultIntern, null);
+			} else {
+				out.forget(man, result, false);
+			}
+		}
+
+		// drop the variables of the callee
+		out.changeEnvironment(man, env, false);
+		return out;
+	}
+
+	/**
+	 * 
+	 * @param condition condition of a conditional jump
+	 * @param linear    true to apply linear constraints if the operands of
+	 *                  condition are linear, false to always apply tree
+	 *                  constraints
+	 * @return the transfer function of the conditional jump
+	 */
+	TransferFunction compileIf(Value condition, boolean linear) {
+		Lincons1[] linearCons = linear ? linearizeCondition(condition) : null;
+		if (linearCons != null) {
+			this.scope.track((Object[]) linearCons);
+			Lincons1[] fallCons = new Lincons1[] { linearCons[1] };
+			Lincons1[] branchCons = new Lincons1[] { linearCons[0] };
+			if (linearCons.length == 3) {
+				// a != b holds if a - b > 0 or b - a > 0
+				Lincons1[] otherCons = new Lincons1[] { linearCons[2] };
+				return (fallOut, branchOut) -> {
+					fallOut.meet(fallCons);
+					branchOut.meetEither(branchCons, otherCons);
+				};
+			}
+			return (fallOut, branchOut) -> {
+				fallOut.meet(fallCons);
+				branchOut.meet(branchCons);
+			};
+		}
+
+		Tcons1[] constrs = compileCondition(condition);
+		this.scope.track((Object[]) constrs);
+		Tcons1[] outCons = new Tcons1[] { constrs[1] };
+		Tcons1[] inCons = new Tcons1[] { constrs[0] };
+
+		// if it is a not constrain
+		if (constrs.length == 3) {
+			// a != b holds if a - b > 0 or b - a > 0
+			Tcons1[] otherCons = new Tcons1[] { constrs[2] };
+			return (fallOut, branchOut) -> {
+				// case if is false then skip
+				fallOut.meet(outCons);
+
+				// case if is true then enter branch
+				branchOut.meetEither(inCons, otherCons);
+			};
+		}
+
+		return (fallOut, branchOut) -> {
+			// case if is false then skip
+			fallOut.meet(outCons);
+
+			// case if is true then enter branch
+			branchOut.meet(inCons);
+		};
+	}
 
+	// returns the transfer function of the assignment
+	private TransferFunction compileDef(Value left, Value right) {
 		String leftName = ((JimpleLocal) left).getName();
+
+		if (right instanceof ParameterRef) {
+			ParameterRef parameter = (ParameterRef) right;
+			if (this.summaries != null && parameter.getType() instanceof IntegerType) {
+				// value on entry, related to the result by the summary
+				Linexpr1 argument = new Linexpr1(env, new Linterm1[] { new Linterm1(ARGUMENT + parameter.getIndex(), new MpqScalar(1)) },
+						new MpqScalar(0));
+				this.scope.track(argument);
+				return (fallOut, branchOut) -> fallOut.assign(leftName, argument);
+			}
+			// otherwise, skip function paramenters because they are unknown
+			return IDENTITY;
+		}
+
+		Linexpr1 linear = linearize(right, null);
+		if (linear != null) {
+			return (fallOut, branchOut) -> fallOut.assign(leftName, linear);
+		}
+
 		Texpr1Intern rightIntern = new Texpr1Intern(env, compileExpression(right));
-		
-		curr.assign(man, leftName, rightIntern, null);
-		outWrapper.set(curr);
+		this.scope.track(rightIntern);
+
+		return (fallOut, branchOut) -> fallOut.assign(leftName, rightIntern);
+	}
+
+	/**
+	 * 
+	 * @param expr     expression to linearize
+	 * @param subtract expression to subtract from expr, or null
+	 * @return expr - subtract as a linear expression, or null if it is not linear
+	 */
+	private Linexpr1 linearize(Value expr, Value subtract) {
+		Map<String, BigInteger> terms = new LinkedHashMap<String, BigInteger>();
+		BigInteger[] constant = { BigInteger.ZERO };
+		if (!linearize(expr, BigInteger.ONE, terms, constant)) {
+			return null;
+		}
+		if (subtract != null && !linearize(subtract, BigInteger.ONE.negate(), terms, constant)) {
+			return null;
+		}
+
+		List<Linterm1> linterms = new ArrayList<Linterm1>();
+		for (Map.Entry<String, BigInteger> term : terms.entrySet()) {
+			if (term.getValue().signum() != 0) {
+				linterms.add(new Linterm1(term.getKey(), new MpqScalar(term.getValue(), BigInteger.ONE)));
+			}
+		}
+		Linexpr1 ret = new Linexpr1(env, linterms.toArray(new Linterm1[linterms.size()]), new MpqScalar(constant[0], BigInteger.ONE));
+		this.scope.track(ret);
+		return ret;
+	}
+
+	/**
+	 * Add factor * expr to the linear expression given by terms and constant
+	 * 
+	 * @return false if expr is not linear
+	 */
+	private boolean linearize(Value expr, BigInteger factor, Map<String, BigInteger> terms, BigInteger[] constant) {
+		if (expr instanceof IntConstant) {
+			constant[0] = constant[0].add(factor.multiply(BigInteger.valueOf(((IntConstant) expr).value)));
+			return true;
+		} else if (expr instanceof JimpleLocal) {
+			terms.merge(((JimpleLocal) expr).getName(), factor, BigInteger::add);
+			return true;
+		} else if (expr instanceof JAddExpr) {
+			JAddExpr addExpr = (JAddExpr) expr;
+			return linearize(addExpr.getOp1(), factor, terms, constant) && linearize(addExpr.getOp2(), factor, terms, constant);
+		} else if (expr instanceof JSubExpr) {
+			JSubExpr subExpr = (JSubExpr) expr;
+			return linearize(subExpr.getOp1(), factor, terms, constant)
+					&& linearize(subExpr.getOp2(), factor.negate(), terms, constant);
+		} else if (expr instanceof JMulExpr) {
+			JMulExpr mulExpr = (JMulExpr) expr;
+			if (mulExpr.getOp1() instanceof IntConstant) {
+				BigInteger c = BigInteger.valueOf(((IntConstant) mulExpr.getOp1()).value);
+				return linearize(mulExpr.getOp2(), factor.multiply(c), terms, constant);
+			} else if (mulExpr.getOp2() instanceof IntConstant) {
+				BigInteger c = BigInteger.valueOf(((IntConstant) mulExpr.getOp2()).value);
+				return linearize(mulExpr.getOp1(), factor.multiply(c), terms, constant);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Like {@link #compileCondition(Value)}, for conditions over linear
+	 * expressions
+	 * 
+	 * @return the constraints, or null if an operand is not linear
+	 */
+	private Lincons1[] linearizeCondition(Value expr) {
+		if (!(expr instanceof ConditionExpr)) {
+			return null;
+		}
+		Value op1 = ((ConditionExpr) expr).getOp1();
+		Value op2 = ((ConditionExpr) expr).getOp2();
+		// every constraint gets its own expression, a - b or b - a
+		Linexpr1 diff1 = linearize(op1, op2);
+		Linexpr1 diff2 = linearize(op1, op2);
+		Linexpr1 inv = linearize(op2, op1);
+		if (diff1 == null || inv == null) {
+			return null;
+		}
+
+		if (expr instanceof JEqExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.EQ, diff1), new Lincons1(Lincons1.DISEQ, diff2) };
+		} else if (expr instanceof JNeExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.SUP, diff1), new Lincons1(Lincons1.EQ, diff2), new Lincons1(Lincons1.SUP, inv) };
+		} else if (expr instanceof JGtExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.SUP, diff1), new Lincons1(Lincons1.SUPEQ, inv) };
+		} else if (expr instanceof JGeExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.SUPEQ, diff1), new Lincons1(Lincons1.SUP, inv) };
+		} else if (expr instanceof JLtExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.SUP, inv), new Lincons1(Lincons1.SUPEQ, diff1) };
+		} else if (expr instanceof JLeExpr) {
+			return new Lincons1[] { new Lincons1(Lincons1.SUPEQ, inv), new Lincons1(Lincons1.SUP, diff1) };
+		}
+		return null;
 	}
 
 	private Texpr1Node compileExpression(Value expr) {
@@ -447,7 +1072,7 @@ public class NumericalAnalysis extends ForwardBranchedFlowAnalysis<NumericalStat
 			return new Tcons1[] { cons, invCons };
 		} else if (expr instanceof JNeExpr) {
 			// a != b
-			// encode as a - b > 0 and b - a > 0
+			// encode as a - b > 0 or b - a > 0
 			JNeExpr neExpr = (JNeExpr) expr;
 			Texpr1Node op1 = compileExpression(neExpr.getOp1());
 			Texpr1Node op2 = compileExpression(neExpr.getOp2());
@@ -1,16 +1,35 @@
 package ch.ethz.rse.numerical;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import apron.Abstract1;
 import apron.ApronException;
+import apron.Coeff;
+import apron.DoubleScalar;
 import apron.Environment;
 import apron.Interval;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
 import apron.Manager;
+import apron.MpqScalar;
 import apron.NotImplementedException;
+import apron.Scalar;
 import apron.Tcons1;
 import apron.Texpr1Intern;
+import ch.ethz.rse.utils.Configuration;
+import gmp.Mpfr;
+import gmp.Mpq;
 import soot.Local;
 import soot.SootHelper;
 import soot.Value;
@@ -20,6 +39,10 @@ import soot.jimple.InvokeExpr;
 /**
  * Convenience wrapper for numerical abstract elements in Apron.
  * 
+ * Wrappers are copy-on-write: {@link #copyInto(NumericalStateWrapper)} shares
+ * the wrapped element, which is only copied when one of the wrappers sharing
+ * it is modified. Therefore, elements returned by {@link #get()} must not be
+ * modified, use the mutating operations of the wrapper instead.
  */
 public class NumericalStateWrapper {
 
@@ -45,6 +68,97 @@ public class NumericalStateWrapper {
 		}
 	}
 
+	/**
+	 * Number of states shared by {@link #copyInto(NumericalStateWrapper)},
+	 * instead of copying them
+	 */
+	private static final AtomicLong sharedCopies = new AtomicLong();
+
+	/**
+	 * Number of shared states that had to be replaced by a fresh element, because
+	 * they were modified
+	 */
+	private static final AtomicLong copiesOnWrite = new AtomicLong();
+
+	/**
+	 * 
+	 * @return number of states shared instead of copied, since the start of the
+	 *         JVM
+	 */
+	public static long getSharedCopies() {
+		return sharedCopies.get();
+	}
+
+	/**
+	 * 
+	 * @return number of shared states that were copied on write, since the start
+	 *         of the JVM
+	 */
+	public static long getCopiesOnWrite() {
+		return copiesOnWrite.get();
+	}
+
+	/**
+	 * Number of convergence checks ({@link #equals(Object)} and
+	 * {@link #isIncludedIn(NumericalStateWrapper)})
+	 */
+	private static final AtomicLong convergenceChecks = new AtomicLong();
+
+	/**
+	 * Number of convergence checks decided without calling into Apron
+	 */
+	private static final AtomicLong convergenceShortcuts = new AtomicLong();
+
+	/**
+	 * Total time spent in convergence checks
+	 */
+	private static final AtomicLong convergenceNanos = new AtomicLong();
+
+	/**
+	 * Source of {@link #generation}s
+	 */
+	private static final AtomicLong generations = new AtomicLong();
+
+	/**
+	 * If set, {@link #equals(Object)} also checks that Apron's equality and
+	 * inclusion tests agree. Costs an additional inclusion test per check.
+	 */
+	private static final boolean SANITY_CHECKS = Configuration.props.getSanityChecks();
+
+	/**
+	 * 
+	 * @return number of convergence checks, since the start of the JVM
+	 */
+	public static long getConvergenceChecks() {
+		return convergenceChecks.get();
+	}
+
+	/**
+	 * 
+	 * @return number of convergence checks decided without calling into Apron,
+	 *         since the start of the JVM
+	 */
+	public static long getConvergenceShortcuts() {
+		return convergenceShortcuts.get();
+	}
+
+	/**
+	 * 
+	 * @return time spent in convergence checks, since the start of the JVM
+	 */
+	public static long getConvergenceNanos() {
+		return convergenceNanos.get();
+	}
+
+	/**
+	 * Count a convergence check decided from generations alone (see
+	 * {@link FixpointEngine})
+	 */
+	static void countConvergenceShortcut() {
+		convergenceChecks.incrementAndGet();
+		convergenceShortcuts.incrementAndGet();
+	}
+
 	// FIELDS
 
 	/**
@@ -52,6 +166,20 @@ public class NumericalStateWrapper {
 	 */
 	private Abstract1 elem;
 
+	/**
+	 * True if {@link #elem} may be referenced by other wrappers, and must not be
+	 * modified in place
+	 */
+	private boolean shared = false;
+
+	/**
+	 * Version of the content of {@link #elem}. Wrappers with the same generation
+	 * hold equal states: it is only shared by
+	 * {@link #copyInto(NumericalStateWrapper)} and {@link #copy()}, and renewed
+	 * by every modification.
+	 */
+	private long generation = generations.incrementAndGet();
+
 	/**
 	 * Manager for numerical abstract domain
 	 */
@@ -71,36 +199,455 @@ public class NumericalStateWrapper {
 
 	// FUNCTIONS
 
+	/**
+	 * 
+	 * @return the wrapped element, which must not be modified
+	 */
 	public Abstract1 get() {
 		return elem;
 	}
 
 	public void set(Abstract1 e) {
 		elem = e;
+		shared = false;
+		generation = generations.incrementAndGet();
 	}
 
 	public NumericalStateWrapper copy() {
 		Abstract1 copy;
 		try {
 			copy = new Abstract1(man, this.elem);
-			return new NumericalStateWrapper(this.man, copy);
+			NumericalStateWrapper ret = new NumericalStateWrapper(this.man, copy);
+			ret.generation = this.generation;
+			return ret;
 		} catch (ApronException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Copies this state into `other`
+	 * 
+	 * @return a new wrapper sharing the element of this state, like
+	 *         {@link #copyInto(NumericalStateWrapper)}
+	 */
+	NumericalStateWrapper share() {
+		NumericalStateWrapper ret = new NumericalStateWrapper(this.man, this.elem);
+		this.copyInto(ret);
+		return ret;
+	}
+
+	/**
+	 * 
+	 * @return the version of the content of this state: states with the same
+	 *         generation are equal
+	 */
+	long getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Copies this state into `other`. The element is shared until one of the two
+	 * wrappers is modified.
 	 * 
 	 * @param other
 	 */
 	public void copyInto(NumericalStateWrapper other) {
-		NumericalStateWrapper copy = this.copy();
-		other.elem = copy.elem;
+		other.elem = this.elem;
+		other.generation = this.generation;
+		other.shared = true;
+		this.shared = true;
+		sharedCopies.incrementAndGet();
+	}
+
+	/**
+	 * Assign expr to var
+	 */
+	public void assign(String var, Texpr1Intern expr) {
+		try {
+			if (shared) {
+				this.set(elem.assignCopy(man, var, expr, null));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.assign(man, var, expr, null);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Meet with the given constraints
+	 */
+	public void meet(Tcons1[] constraints) {
+		try {
+			if (shared) {
+				this.set(elem.meetCopy(man, constraints));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.meet(man, constraints);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Meet with the disjunction of two constraint systems, i.e., replace this
+	 * state by the join of its meets with first and with second
+	 */
+	public void meetEither(Tcons1[] first, Tcons1[] second) {
+		try {
+			Abstract1 joined = elem.meetCopy(man, first);
+			joined.join(man, elem.meetCopy(man, second));
+			this.set(joined);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Assign the linear expression expr to var
+	 */
+	public void assign(String var, Linexpr1 expr) {
+		try {
+			if (shared) {
+				this.set(elem.assignCopy(man, var, expr, null));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.assign(man, var, expr, null);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Meet with the given linear constraints
+	 */
+	public void meet(Lincons1[] constraints) {
+		try {
+			if (shared) {
+				this.set(elem.meetCopy(man, constraints));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.meet(man, constraints);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Like {@link #meetEither(Tcons1[], Tcons1[])}, for linear constraints
+	 */
+	public void meetEither(Lincons1[] first, Lincons1[] second) {
+		try {
+			Abstract1 joined = elem.meetCopy(man, first);
+			joined.join(man, elem.meetCopy(man, second));
+			this.set(joined);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Join with `other`, leaving `other` unchanged
+	 */
+	public void join(NumericalStateWrapper other) {
+		try {
+			if (shared) {
+				this.set(elem.joinCopy(man, other.elem));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.join(man, other.elem);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Widen with `other`, leaving `other` unchanged
+	 */
+	public void widen(NumericalStateWrapper other) {
+		try {
+			// widening always allocates a fresh element
+			this.set(elem.widening(man, other.elem));
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Forget everything about var
+	 */
+	public void forget(String var) {
+		try {
+			if (shared) {
+				this.set(elem.forgetCopy(man, var, false));
+				copiesOnWrite.incrementAndGet();
+			} else {
+				elem.forget(man, var, false);
+				generation = generations.incrementAndGet();
+			}
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param vars variables to keep, variables not in the environment of this
+	 *             state are ignored
+	 * @return a new state over the integer variables of vars only, where all
+	 *         other variables are projected away, or this state if the domain
+	 *         does not support changing environments
+	 */
+	public NumericalStateWrapper project(Collection<String> vars) {
+		Environment env = this.elem.getEnvironment();
+		List<String> kept = new ArrayList<String>();
+		for (String var : vars) {
+			if (env.hasVar(var) && !kept.contains(var)) {
+				kept.add(var);
+			}
+		}
+		if (kept.size() == env.getVars().length) {
+			return this;
+		}
+		try {
+			Environment projected = new Environment(kept.toArray(new String[kept.size()]), new String[] {});
+			return new NumericalStateWrapper(this.man, this.elem.changeEnvironmentCopy(this.man, projected, false));
+		} catch (UnsupportedOperationException e) {
+			logger.debug("Cannot project state: {}", e.getMessage());
+			return this;
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	// TODO: MAYBE FILL THIS OUT: add convenience methods
 
+	/**
+	 *
+	 * @return true if this state is bottom, i.e., unreachable
+	 */
+	public boolean isBottom() {
+		try {
+			return this.elem.isBottom(this.man);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param other
+	 * @return true if this state is included in `other`
+	 */
+	public boolean isIncludedIn(NumericalStateWrapper other) {
+		if (this.sameState(other)) {
+			return true;
+		}
+		long startTime = System.nanoTime();
+		try {
+			return this.elem.isIncluded(this.man, other.elem);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		} finally {
+			convergenceNanos.addAndGet(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Cheap sufficient condition for equality of this and `other`, counting the
+	 * convergence check
+	 */
+	private boolean sameState(NumericalStateWrapper other) {
+		convergenceChecks.incrementAndGet();
+		if (this.elem == other.elem || this.generation == other.generation) {
+			convergenceShortcuts.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	// SERIALIZATION
+
+	/**
+	 * Tags of serialized coefficients
+	 */
+	private static final byte COEFF_MPQ = 0;
+	private static final byte COEFF_DOUBLE = 1;
+	private static final byte COEFF_INFINITY = 2;
+	private static final byte COEFF_INTERVAL = 3;
+
+	/**
+	 * Write the environment and the constraint system of this state, to be read
+	 * back by {@link #read(Manager, DataInput)}. Nothing is written if the state
+	 * has a modular constraint, which the domains used here cannot meet with
+	 * exactly.
+	 * 
+	 * @return false if nothing was written because the state cannot be
+	 *         serialized
+	 */
+	public boolean write(DataOutput out) throws IOException {
+		try {
+			Environment env = elem.getEnvironment();
+			boolean bottom = elem.isBottom(man);
+			Lincons1[] constraints = bottom ? new Lincons1[0] : elem.toLincons(man);
+			for (Lincons1 c : constraints) {
+				if (c.getKind() == Lincons1.EQMOD) {
+					return false;
+				}
+			}
+
+			writeNames(out, env.getIntVars());
+			writeNames(out, env.getRealVars());
+			out.writeBoolean(bottom);
+			if (bottom) {
+				return true;
+			}
+
+			out.writeInt(constraints.length);
+			for (Lincons1 c : constraints) {
+				out.writeByte(c.getKind());
+				writeCoeff(out, c.getCst());
+				Linterm1[] terms = c.getLinterms();
+				out.writeInt(terms.length);
+				for (Linterm1 t : terms) {
+					out.writeInt(env.dimOfVar(t.getVariable().toString()));
+					writeCoeff(out, t.getCoefficient());
+				}
+			}
+			return true;
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param man manager to create the state with
+	 * @return a state written by {@link #write(DataOutput)}
+	 */
+	public static NumericalStateWrapper read(Manager man, DataInput in) throws IOException {
+		return NumericalStateWrapper.read(man, in, "");
+	}
+
+	/**
+	 * 
+	 * @param man    manager to create the state with
+	 * @param prefix prefix to add to the names of all variables
+	 * @return a state written by {@link #write(DataOutput)}, with renamed
+	 *         variables
+	 */
+	public static NumericalStateWrapper read(Manager man, DataInput in, String prefix) throws IOException {
+		String[] ints = readNames(in, prefix);
+		String[] reals = readNames(in, prefix);
+		Environment env = new Environment(ints, reals);
+		try {
+			if (in.readBoolean()) {
+				return new NumericalStateWrapper(man, new Abstract1(man, env, true));
+			}
+
+			Lincons1[] constraints = new Lincons1[in.readInt()];
+			for (int i = 0; i < constraints.length; i++) {
+				int kind = in.readByte();
+				Coeff cst = readCoeff(in);
+				Linterm1[] terms = new Linterm1[in.readInt()];
+				for (int j = 0; j < terms.length; j++) {
+					int dim = in.readInt();
+					String var = dim < ints.length ? ints[dim] : reals[dim - ints.length];
+					terms[j] = new Linterm1(var, readCoeff(in));
+				}
+				constraints[i] = new Lincons1(kind, new Linexpr1(env, terms, cst));
+			}
+
+			Abstract1 elem = new Abstract1(man, env);
+			elem.meet(man, constraints);
+			return new NumericalStateWrapper(man, elem);
+		} catch (ApronException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void writeNames(DataOutput out, Object[] names) throws IOException {
+		out.writeInt(names.length);
+		for (Object name : names) {
+			out.writeUTF(name.toString());
+		}
+	}
+
+	private static String[] readNames(DataInput in, String prefix) throws IOException {
+		String[] names = new String[in.readInt()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = prefix + in.readUTF();
+		}
+		return names;
+	}
+
+	private static void writeCoeff(DataOutput out, Coeff c) throws IOException {
+		if (c instanceof Interval) {
+			out.writeByte(COEFF_INTERVAL);
+			writeScalar(out, c.inf());
+			writeScalar(out, c.sup());
+		} else {
+			writeScalar(out, (Scalar) c);
+		}
+	}
+
+	private static void writeScalar(DataOutput out, Scalar s) throws IOException {
+		int infty = s.isInfty();
+		if (infty != 0) {
+			out.writeByte(COEFF_INFINITY);
+			out.writeByte(infty);
+		} else if (s instanceof DoubleScalar) {
+			out.writeByte(COEFF_DOUBLE);
+			out.writeDouble(((DoubleScalar) s).get());
+		} else {
+			// MpqScalar, or MpfrScalar whose finite values are rationals, so
+			// the conversion is exact
+			Mpq q = new Mpq();
+			s.toMpq(q, Mpfr.RNDN);
+			out.writeByte(COEFF_MPQ);
+			out.writeUTF(q.toString());
+		}
+	}
+
+	private static Coeff readCoeff(DataInput in) throws IOException {
+		byte tag = in.readByte();
+		if (tag == COEFF_INTERVAL) {
+			Scalar inf = readScalar(in, in.readByte());
+			Scalar sup = readScalar(in, in.readByte());
+			return new Interval(inf, sup);
+		}
+		return readScalar(in, tag);
+	}
+
+	private static Scalar readScalar(DataInput in, byte tag) throws IOException {
+		switch (tag) {
+		case COEFF_INFINITY:
+			Scalar s = new MpqScalar();
+			s.setInfty(in.readByte());
+			return s;
+		case COEFF_DOUBLE:
+			return new DoubleScalar(in.readDouble());
+		case COEFF_MPQ:
+			// numerator, optionally followed by "/denominator"
+			String[] parts = in.readUTF().split("/");
+			BigInteger num = new BigInteger(parts[0]);
+			BigInteger den = parts.length > 1 ? new BigInteger(parts[1]) : BigInteger.ONE;
+			return new MpqScalar(num, den);
+		default:
+			throw new IOException("Unknown coefficient tag " + tag);
+		}
+	}
+
 	// EQUALS, HASHCODE, TOSTRING
 
 	@Override
@@ -110,17 +657,25 @@ public class NumericalStateWrapper {
 			return false;
 		}
 		NumericalStateWrapper w = (NumericalStateWrapper) o;
+		if (this.sameState(w)) {
+			return true;
+		}
 
 		Abstract1 t = w.get();
+		long startTime = System.nanoTime();
 		try {
+			boolean equal = elem.isEqual(man, t);
+
 			// sanity check
-			if (elem.isEqual(man, t) && !elem.isIncluded(man, t)) {
+			if (SANITY_CHECKS && equal && !elem.isIncluded(man, t)) {
 				throw new RuntimeException("VIOLATION");
 			}
 
-			return elem.isEqual(man, t);
+			return equal;
 		} catch (ApronException e) {
 			throw new RuntimeException("isEqual failed");
+		} finally {
+			convergenceNanos.addAndGet(System.nanoTime() - startTime);
 		}
 	}
 
@@ -0,0 +1,154 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ch.ethz.rse.pointer.ProgramIndex;
+import soot.Unit;
+import soot.jimple.ReturnStmt;
+import soot.jimple.internal.JReturnVoidStmt;
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * Backward dependency cone of a set of demanded units: the demanded units and
+ * all units that can reach them in a unit graph, as a subgraph of that graph.
+ *
+ * The state before a unit only depends on the states of its predecessors, and
+ * every predecessor of a unit in the cone is in the cone. Hence, analyzing the
+ * cone on its own yields the same states as analyzing the whole graph, for
+ * all units in the cone. Units outside the cone (e.g., code after the last
+ * query) are never evaluated, and branches outside the cone do not need to be
+ * tracked. Their statements are still checked for support, see
+ * {@link NumericalAnalysis#validate(soot.SootMethod)}.
+ */
+public class QueryCone implements DirectedGraph<Unit> {
+
+	private final DirectedGraph<Unit> graph;
+
+	/**
+	 * Units of the cone, in the order of {@link #graph}
+	 */
+	private final Set<Unit> units = Collections.newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+
+	private final List<Unit> ordered = new ArrayList<Unit>();
+
+	private final List<Unit> heads = new ArrayList<Unit>();
+
+	private final List<Unit> tails = new ArrayList<Unit>();
+
+	/**
+	 *
+	 * @param graph    graph to restrict
+	 * @param demanded units of graph whose states are needed
+	 */
+	public QueryCone(DirectedGraph<Unit> graph, Collection<Unit> demanded) {
+		this.graph = graph;
+
+		Deque<Unit> worklist = new ArrayDeque<Unit>();
+		for (Unit u : demanded) {
+			if (this.units.add(u)) {
+				worklist.push(u);
+			}
+		}
+		while (!worklist.isEmpty()) {
+			for (Unit pred : graph.getPredsOf(worklist.pop())) {
+				if (this.units.add(pred)) {
+					worklist.push(pred);
+				}
+			}
+		}
+
+		for (Unit u : graph) {
+			if (this.units.contains(u)) {
+				this.ordered.add(u);
+			}
+		}
+		for (Unit u : graph.getHeads()) {
+			if (this.units.contains(u)) {
+				this.heads.add(u);
+			}
+		}
+		for (Unit u : this.ordered) {
+			if (this.getSuccsOf(u).isEmpty()) {
+				this.tails.add(u);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param graph     unit graph of a method
+	 * @param index     index of the method
+	 * @param summarize true if the summary of the method will be computed from
+	 *                  the states before its return statements
+	 * @return the cone of the units whose states the checks query (see
+	 *         {@link ch.ethz.rse.verify.QueryStates#getQueries(ProgramIndex)}),
+	 *         and of all return statements if summarize is set
+	 */
+	public static QueryCone of(DirectedGraph<Unit> graph, ProgramIndex index, boolean summarize) {
+		Set<Unit> demanded = new LinkedHashSet<Unit>(index.getEventInitializations());
+		demanded.addAll(index.getSwitchLightsCalls());
+		if (summarize) {
+			for (Unit u : graph) {
+				if (u instanceof ReturnStmt || u instanceof JReturnVoidStmt) {
+					demanded.add(u);
+				}
+			}
+		}
+		return new QueryCone(graph, demanded);
+	}
+
+	/**
+	 *
+	 * @param u unit of the restricted graph
+	 * @return true if u is part of the cone
+	 */
+	public boolean contains(Unit u) {
+		return this.units.contains(u);
+	}
+
+	@Override
+	public List<Unit> getHeads() {
+		return this.heads;
+	}
+
+	@Override
+	public List<Unit> getTails() {
+		return this.tails;
+	}
+
+	@Override
+	public List<Unit> getPredsOf(Unit u) {
+		// all predecessors of units in the cone are in the cone
+		return this.graph.getPredsOf(u);
+	}
+
+	@Override
+	public List<Unit> getSuccsOf(Unit u) {
+		List<Unit> succs = new ArrayList<Unit>();
+		for (Unit succ : this.graph.getSuccsOf(u)) {
+			if (this.units.contains(succ)) {
+				succs.add(succ);
+			}
+		}
+		return succs;
+	}
+
+	@Override
+	public int size() {
+		return this.ordered.size();
+	}
+
+	@Override
+	public Iterator<Unit> iterator() {
+		return this.ordered.iterator();
+	}
+}
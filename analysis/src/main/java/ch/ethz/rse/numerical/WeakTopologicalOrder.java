@@ -0,0 +1,192 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import soot.Unit;
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * Weak topological order of a unit graph, following Bourdoncle ("Efficient
+ * chaining iteration strategies", 1993). The order is a list of components,
+ * each either a single unit or a loop: a head unit followed by the
+ * (recursively ordered) components of the loop body.
+ */
+public class WeakTopologicalOrder {
+
+	/**
+	 * Element of a weak topological order
+	 */
+	public static class Component {
+
+		/**
+		 * the unit itself, or the head of the loop
+		 */
+		public final Unit head;
+
+		/**
+		 * components of the loop body (empty for single units)
+		 */
+		public final List<Component> body;
+
+		private final boolean loop;
+
+		private Component(Unit head) {
+			this.head = head;
+			this.body = Collections.emptyList();
+			this.loop = false;
+		}
+
+		private Component(Unit head, List<Component> body) {
+			this.head = head;
+			this.body = body;
+			this.loop = true;
+		}
+
+		/**
+		 *
+		 * @return true if this component is a loop, whose head is a widening point
+		 */
+		public boolean isLoop() {
+			return this.loop;
+		}
+
+		@Override
+		public String toString() {
+			if (this.loop) {
+				return "(" + this.head + " " + this.body + ")";
+			} else {
+				return this.head.toString();
+			}
+		}
+	}
+
+	private final DirectedGraph<Unit> graph;
+
+	/**
+	 * depth-first number of each unit (absent: not yet visited)
+	 */
+	private final Map<Unit, Integer> dfn = new IdentityHashMap<Unit, Integer>();
+
+	private final Deque<Unit> stack = new ArrayDeque<Unit>();
+
+	private int num = 0;
+
+	/**
+	 * top-level components, in iteration order
+	 */
+	private final List<Component> components = new LinkedList<Component>();
+
+	/**
+	 * Head of the innermost loop containing each unit (units outside of loops
+	 * are absent). The head of a loop maps to the head of the enclosing loop.
+	 */
+	private final Map<Unit, Unit> innermostLoopHead = new IdentityHashMap<Unit, Unit>();
+
+	/**
+	 *
+	 * @param graph graph to order, starting from its heads
+	 */
+	public WeakTopologicalOrder(DirectedGraph<Unit> graph) {
+		this.graph = graph;
+		for (Unit head : graph.getHeads()) {
+			if (this.dfn(head) == 0) {
+				this.visit(head, (LinkedList<Component>) this.components);
+			}
+		}
+
+		// index innermost loops: outer loops are indexed first, so that inner
+		// loops overwrite them
+		this.index(this.components, null);
+	}
+
+	/**
+	 *
+	 * @return the top-level components, in iteration order
+	 */
+	public List<Component> getComponents() {
+		return this.components;
+	}
+
+	/**
+	 *
+	 * @param u    a unit of the graph
+	 * @param head head of a loop component
+	 * @return true if u is head, or belongs to the body of its loop (possibly
+	 *         nested in inner loops)
+	 */
+	public boolean isInLoop(Unit u, Unit head) {
+		for (Unit v = u; v != null; v = this.innermostLoopHead.get(v)) {
+			if (v == head) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void index(List<Component> partition, Unit loopHead) {
+		for (Component c : partition) {
+			if (loopHead != null) {
+				this.innermostLoopHead.put(c.head, loopHead);
+			}
+			this.index(c.body, c.head);
+		}
+	}
+
+	private int dfn(Unit u) {
+		Integer n = this.dfn.get(u);
+		return n == null ? 0 : n;
+	}
+
+	private int visit(Unit v, LinkedList<Component> partition) {
+		this.stack.push(v);
+		this.num++;
+		this.dfn.put(v, this.num);
+		int head = this.num;
+		boolean loop = false;
+
+		for (Unit w : this.graph.getSuccsOf(v)) {
+			int min = this.dfn(w) == 0 ? this.visit(w, partition) : this.dfn(w);
+			if (min <= head) {
+				head = min;
+				loop = true;
+			}
+		}
+
+		if (head == this.dfn(v)) {
+			this.dfn.put(v, Integer.MAX_VALUE);
+			Unit element = this.stack.pop();
+			if (loop) {
+				// units of the loop body are ordered again, inside the component
+				while (element != v) {
+					this.dfn.put(element, 0);
+					element = this.stack.pop();
+				}
+				partition.addFirst(this.component(v));
+			} else {
+				partition.addFirst(new Component(v));
+			}
+		}
+		return head;
+	}
+
+	private Component component(Unit v) {
+		LinkedList<Component> partition = new LinkedList<Component>();
+		for (Unit w : this.graph.getSuccsOf(v)) {
+			if (this.dfn(w) == 0) {
+				this.visit(w, partition);
+			}
+		}
+		return new Component(v, partition);
+	}
+
+	@Override
+	public String toString() {
+		return this.components.toString();
+	}
+}
@@ -48,7 +48,7 @@ public class EventInitializer {
 	 * 
 	 * @return unique identifier of the initializer
 	 */
-	private int getUniqueNumber() {
+	int getUniqueNumber() {
 		return this.uniqueNumber;
 	}
 
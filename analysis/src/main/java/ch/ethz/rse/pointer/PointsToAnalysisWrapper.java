@@ -30,12 +30,22 @@ public class PointsToAnalysisWrapper {
 	 * @return a list of nodes that base could point to
 	 */
 	public Collection<Node> getNodes(Local base) {
-		PointsToSetInternal pts = (PointsToSetInternal) this.pointsToAnalysis.reachingObjects(base);
 		P2SetCollector c = new P2SetCollector();
-		pts.forall(c);
+		this.forAllNodes(base, c);
 		return c.getNodes();
 	}
 
+	/**
+	 * Visits the nodes base could point to, without collecting them
+	 * 
+	 * @param base    represents a local variable
+	 * @param visitor called on every node that base could point to
+	 */
+	public void forAllNodes(Local base, P2SetVisitor visitor) {
+		PointsToSetInternal pts = (PointsToSetInternal) this.pointsToAnalysis.reachingObjects(base);
+		pts.forall(visitor);
+	}
+
 }
 
 /**
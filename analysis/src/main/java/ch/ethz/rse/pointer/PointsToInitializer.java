@@ -1,7 +1,10 @@
 package ch.ethz.rse.pointer;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -10,10 +13,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
 import ch.ethz.rse.utils.Constants;
 import soot.Local;
+import soot.RefType;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.Unit;
@@ -24,6 +29,7 @@ import soot.jimple.internal.JInvokeStmt;
 import soot.jimple.internal.JSpecialInvokeExpr;
 import soot.jimple.internal.JVirtualInvokeExpr;
 import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.sets.P2SetVisitor;
 
 /**
  * Convenience class which helps determine the {@link EventInitializer}s
@@ -54,21 +60,40 @@ public class PointsToInitializer {
 	private final Multimap<SootMethod, EventInitializer> perMethod = HashMultimap.create();
 
 	/**
-	 * All {@link JVirtualInvokeExpr}s, keyed by method
+	 * All {@link JVirtualInvokeExpr}s calling switchLights, keyed by method
 	 */
-	private final Multimap<SootMethod, JVirtualInvokeExpr> virtualInvokes = HashMultimap.create();
+	private final Multimap<SootMethod, JVirtualInvokeExpr> virtualInvokes = LinkedHashMultimap.create();
+
+	/**
+	 * Index of every method of {@link #c}
+	 */
+	private final Map<SootMethod, ProgramIndex> indices = new HashMap<SootMethod, ProgramIndex>();
+
+	/**
+	 * All {@link EventInitializer}s, indexed by their (dense) unique number
+	 */
+	private final List<EventInitializer> byId = new ArrayList<EventInitializer>();
+
+	/**
+	 * Unique numbers of the initializers each Event local of {@link #c} may point
+	 * to
+	 */
+	private final Map<Local, BitSet> table = new IdentityHashMap<Local, BitSet>();
 
 	public PointsToInitializer(SootClass c) {
 		this.c = c;
-		logger.debug("Running points-to analysis on " + c.getName());
+		logger.debug("Running points-to analysis on {}", c.getName());
 		this.pointsTo = new PointsToAnalysisWrapper(c);
-		logger.debug("Analyzing initializers in " + c.getName());
+		logger.debug("Analyzing initializers in {}", c.getName());
 		this.analyzeAllInitializers();
+		this.buildPointsToTable();
 	}
 
 	private void analyzeAllInitializers() {
 		int idCounter = 0;
 		for (SootMethod method : this.c.getMethods()) {
+			ProgramIndex index = new ProgramIndex(method);
+			this.indices.put(method, index);
 
 			if (method.getName().contains("<init>")) {
 				// skip constructor of the class
@@ -76,58 +101,81 @@ public class PointsToInitializer {
 			}
 
 			// populate data structures perMethod and initializers
-			for (Unit u : method.getActiveBody().getUnits()) {
-				if (!(u instanceof JInvokeStmt)) {
-					continue;
-				}
-
-				JInvokeStmt invokeStmt = (JInvokeStmt) u;
-				Value v = invokeStmt.getInvokeExpr();
-
-				if (v instanceof JSpecialInvokeExpr) {
-					// it is a class constructor call
-					JSpecialInvokeExpr specialInvokeExpr = (JSpecialInvokeExpr) v;
-					SootClass baseClass = specialInvokeExpr.getMethodRef().getDeclaringClass();
-
-					if (!baseClass.getName().equals(Constants.EventClassName)) {
-						continue;
-					}
-
-					// TODO idk if this is the right way to get the node reference
-					// probabily the right way is to get it directly from the object
-					if (!(specialInvokeExpr.getBase() instanceof Local)) {
-						throw new RuntimeException("Unexpected base class for special invoke expression: " + specialInvokeExpr);
-					}
-					Local base = (Local) specialInvokeExpr.getBase();
-					// because there should be only one node after we define the object
-					Node baseNode = this.pointsTo.getNodes(base).iterator().next();
-
-					int start = ((IntConstant) specialInvokeExpr.getArg(0)).value;
-					
-					EventInitializer initializer = new EventInitializer(invokeStmt, idCounter, start);
-					idCounter++;
-
-					perMethod.put(method, initializer);
-					initializers.put(baseNode, initializer);
-				} else if (v instanceof JVirtualInvokeExpr) {
-					// it is a call to an object
-					JVirtualInvokeExpr virtualInvokeExpr = (JVirtualInvokeExpr) v;
-
-					// check is the right class
-					if (!(virtualInvokeExpr.getBase().getType().toString().equals(Constants.EventClassName))) {
-						continue;
-					}
-
-					virtualInvokes.put(method, virtualInvokeExpr);
+			for (JInvokeStmt invokeStmt : index.getEventInitializations()) {
+				// it is a class constructor call
+				JSpecialInvokeExpr specialInvokeExpr = (JSpecialInvokeExpr) invokeStmt.getInvokeExpr();
+
+				// TODO idk if this is the right way to get the node reference
+				// probabily the right way is to get it directly from the object
+				if (!(specialInvokeExpr.getBase() instanceof Local)) {
+					throw new RuntimeException("Unexpected base class for special invoke expression: " + specialInvokeExpr);
 				}
+				Local base = (Local) specialInvokeExpr.getBase();
+				// because there should be only one node after we define the object
+				Node baseNode = this.pointsTo.getNodes(base).iterator().next();
+
+				int start = ((IntConstant) specialInvokeExpr.getArg(0)).value;
+				
+				EventInitializer initializer = new EventInitializer(invokeStmt, idCounter, start);
+				idCounter++;
+
+				byId.add(initializer);
+				perMethod.put(method, initializer);
+				initializers.put(baseNode, initializer);
+			}
 
+			for (JInvokeStmt invokeStmt : index.getSwitchLightsCalls()) {
+				// it is a call to an object
+				virtualInvokes.put(method, (JVirtualInvokeExpr) invokeStmt.getInvokeExpr());
 			}
+		}
+	}
 
+	/**
+	 * Queries the points-to analysis once for every Event local of {@link #c}
+	 */
+	private void buildPointsToTable() {
+		long startTime = System.nanoTime();
+		for (SootMethod method : this.c.getMethods()) {
+			if (!method.hasActiveBody()) {
+				continue;
+			}
+			for (Local l : method.getActiveBody().getLocals()) {
+				if (l.getType() instanceof RefType && l.getType().toString().equals(Constants.EventClassName)) {
+					this.table.put(l, this.computeInitializerIds(l));
+				}
+			}
 		}
+		long duration = (System.nanoTime() - startTime) / 1000000;
+		logger.debug("Runtime: points-to table for {} locals and {} initializers {}ms", this.table.size(), this.byId.size(), duration);
+	}
+
+	private BitSet computeInitializerIds(Local base) {
+		BitSet ids = new BitSet(this.byId.size());
+		this.pointsTo.forAllNodes(base, new P2SetVisitor() {
+			@Override
+			public void visit(Node node) {
+				EventInitializer initializer = initializers.get(node);
+				if (initializer != null) {
+					// ignore nodes that were not initialized
+					ids.set(initializer.getUniqueNumber());
+				}
+			}
+		});
+		return ids;
 	}
 
 	// TODO: MAYBE FILL THIS OUT: add convenience methods
 
+	/**
+	 * 
+	 * @param method method of the analyzed class
+	 * @return index of the body of method, shared by all consumers
+	 */
+	public ProgramIndex getIndex(SootMethod method) {
+		return this.indices.get(method);
+	}
+
 	public Collection<EventInitializer> getInitializers(SootMethod method) {
 		return this.perMethod.get(method);
 	}
@@ -137,18 +185,38 @@ public class PointsToInitializer {
 	}
 
 	public List<EventInitializer> pointsTo(Local base) {
-		Collection<Node> nodes = this.pointsTo.getNodes(base);
+		BitSet ids = this.getInitializerIds(base);
 		List<EventInitializer> initializers = new LinkedList<EventInitializer>();
-		for (Node node : nodes) {
-			EventInitializer initializer = this.initializers.get(node);
-			if (initializer != null) {
-				// ignore nodes that were not initialized
-				initializers.add(initializer);
-			}
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			initializers.add(this.byId.get(id));
 		}
 		return initializers;
 	}
 
+	/**
+	 * 
+	 * @param base local variable of a method of the analyzed class
+	 * @return unique numbers of the initializers base may point to (see
+	 *         {@link #getInitializer(int)}); shared, must not be modified
+	 */
+	public BitSet getInitializerIds(Local base) {
+		BitSet ids = this.table.get(base);
+		if (ids == null) {
+			// not an Event local, fall back to the points-to analysis
+			ids = this.computeInitializerIds(base);
+		}
+		return ids;
+	}
+
+	/**
+	 * 
+	 * @param id unique number of an initializer
+	 * @return the initializer with unique number id
+	 */
+	public EventInitializer getInitializer(int id) {
+		return this.byId.get(id);
+	}
+
 	/**
 	 * Returns all allocation nodes that could correspond to the given invokeExpression, which must be a call to Event init function
 	 * Note that more than one node can be returned.
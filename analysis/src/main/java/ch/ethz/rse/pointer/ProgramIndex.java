@@ -0,0 +1,171 @@
+package ch.ethz.rse.pointer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import ch.ethz.rse.utils.Constants;
+import soot.Local;
+import soot.RefLikeType;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.InvokeExpr;
+import soot.jimple.ReturnStmt;
+import soot.jimple.internal.JInvokeStmt;
+import soot.jimple.internal.JSpecialInvokeExpr;
+import soot.jimple.internal.JVirtualInvokeExpr;
+import soot.jimple.internal.JimpleLocal;
+
+/**
+ * Facts about the body of a method needed by the verifier, collected in a
+ * single pass over its units
+ */
+public class ProgramIndex {
+
+	/**
+	 * Statement of each invocation (invoke expressions are compared by identity)
+	 */
+	private final Map<InvokeExpr, JInvokeStmt> statements = new IdentityHashMap<InvokeExpr, JInvokeStmt>();
+
+	/**
+	 * Calls to the constructor of {@link Constants#EventClassName}, in program
+	 * order
+	 */
+	private final List<JInvokeStmt> eventInitializations = new ArrayList<JInvokeStmt>();
+
+	/**
+	 * Calls to {@link Constants#switchLightsFunctionName}, in program order
+	 */
+	private final List<JInvokeStmt> switchLightsCalls = new ArrayList<JInvokeStmt>();
+
+	/**
+	 * All assignments to integer variables, keyed by variable in order of first
+	 * assignment
+	 */
+	private final ListMultimap<Local, DefinitionStmt> definitions = LinkedListMultimap.create();
+
+	/**
+	 * Integer variables, in order of first assignment
+	 */
+	private final Set<Local> integerVariables = new LinkedHashSet<Local>();
+
+	/**
+	 * All if statements, in program order
+	 */
+	private final List<IfStmt> ifStatements = new ArrayList<IfStmt>();
+
+	/**
+	 * All statements returning a value, in program order
+	 */
+	private final List<ReturnStmt> returnStatements = new ArrayList<ReturnStmt>();
+
+	/**
+	 *
+	 * @param method method to index, must have an active body
+	 */
+	public ProgramIndex(SootMethod method) {
+		for (Unit u : method.getActiveBody().getUnits()) {
+			if (u instanceof JInvokeStmt) {
+				JInvokeStmt invokeStmt = (JInvokeStmt) u;
+				InvokeExpr invokeExpr = invokeStmt.getInvokeExpr();
+				this.statements.put(invokeExpr, invokeStmt);
+
+				if (invokeExpr instanceof JSpecialInvokeExpr) {
+					String className = invokeExpr.getMethodRef().getDeclaringClass().getName();
+					if (className.equals(Constants.EventClassName)) {
+						this.eventInitializations.add(invokeStmt);
+					}
+				} else if (invokeExpr instanceof JVirtualInvokeExpr) {
+					JVirtualInvokeExpr virtualInvokeExpr = (JVirtualInvokeExpr) invokeExpr;
+					boolean isEvent = virtualInvokeExpr.getBase().getType().toString().equals(Constants.EventClassName);
+					if (isEvent && invokeExpr.getMethodRef().getName().equals(Constants.switchLightsFunctionName)) {
+						this.switchLightsCalls.add(invokeStmt);
+					}
+				}
+			} else if (u instanceof DefinitionStmt) {
+				DefinitionStmt sd = (DefinitionStmt) u;
+				Value left = sd.getLeftOp();
+				if (left instanceof JimpleLocal && !(left.getType() instanceof RefLikeType)) {
+					Local local = (Local) left;
+					this.integerVariables.add(local);
+					this.definitions.put(local, sd);
+				}
+			} else if (u instanceof IfStmt) {
+				this.ifStatements.add((IfStmt) u);
+			} else if (u instanceof ReturnStmt) {
+				this.returnStatements.add((ReturnStmt) u);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param invokeExpr invocation in the indexed method
+	 * @return the statement performing invokeExpr, or null if there is none
+	 */
+	public JInvokeStmt getStatement(InvokeExpr invokeExpr) {
+		return this.statements.get(invokeExpr);
+	}
+
+	/**
+	 *
+	 * @return calls to the constructor of {@link Constants#EventClassName}, in
+	 *         program order
+	 */
+	public List<JInvokeStmt> getEventInitializations() {
+		return this.eventInitializations;
+	}
+
+	/**
+	 *
+	 * @return calls to {@link Constants#switchLightsFunctionName}, in program
+	 *         order
+	 */
+	public List<JInvokeStmt> getSwitchLightsCalls() {
+		return this.switchLightsCalls;
+	}
+
+	/**
+	 *
+	 * @param l integer variable
+	 * @return all assignments to l
+	 */
+	public Collection<DefinitionStmt> getDefinitions(Local l) {
+		return this.definitions.get(l);
+	}
+
+	/**
+	 *
+	 * @return integer variables assigned in the method, in order of first
+	 *         assignment
+	 */
+	public Set<Local> getIntegerVariables() {
+		return this.integerVariables;
+	}
+
+	/**
+	 *
+	 * @return all if statements, in program order
+	 */
+	public List<IfStmt> getIfStatements() {
+		return this.ifStatements;
+	}
+
+	/**
+	 *
+	 * @return all statements returning a value, in program order
+	 */
+	public List<ReturnStmt> getReturnStatements() {
+		return this.returnStatements;
+	}
+}
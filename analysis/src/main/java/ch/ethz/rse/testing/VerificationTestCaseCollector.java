@@ -54,6 +54,16 @@ public class VerificationTestCaseCollector {
 	 * @return a list of all tasks obtained from {@link #testPackage}
 	 */
 	public static List<VerificationTestCase> getTests() throws IOException {
+		return VerificationTestCaseCollector.getTests(testPackage);
+	}
+
+	/**
+	 * 
+	 * @param testPackage package to search for tests, e.g.,
+	 *                    {@link WorkloadGenerator#scalingPackage}
+	 * @return a list of all tasks obtained from testPackage
+	 */
+	public static List<VerificationTestCase> getTests(String testPackage) throws IOException {
 		// get directory of tests
 		String examplesPath = System.getProperty("user.dir") + "/src/test/java/" + testPackage.replace(".", File.separator);
 		File examplesDir = new File(examplesPath);
@@ -132,14 +142,24 @@ public class VerificationTestCaseCollector {
 		return false;
 	}
 
+	/**
+	 * Writes all tasks to target/tests.csv, or, if a package is given as
+	 * argument, the tasks of that package to target/tests-PACKAGE.csv
+	 */
 	public static void main(String[] args) throws IOException {
-		String path = Configuration.props.getBasedir() + File.separator + "target" + File.separator + "tests.csv";
+		String fileName = "tests.csv";
+		String packageName = testPackage;
+		if (args.length > 0) {
+			packageName = args[0];
+			fileName = "tests-" + packageName + ".csv";
+		}
+		String path = Configuration.props.getBasedir() + File.separator + "target" + File.separator + fileName;
 		File testCasesFile = new File(path);
 
 		FileUtils.writeStringToFile(testCasesFile, "packageName,property,expected\n", Charset.defaultCharset(), false);
 
 
-		for (VerificationTestCase t : VerificationTestCaseCollector.getTests()) {
+		for (VerificationTestCase t : VerificationTestCaseCollector.getTests(packageName)) {
 			String line = t.toSCV();
 			FileUtils.writeStringToFile(testCasesFile, line + "\n", Charset.defaultCharset(), true);
 		}
@@ -0,0 +1,271 @@
+package ch.ethz.rse.testing;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.utils.Constants;
+import ch.ethz.rse.utils.FileUtilsWrapper;
+
+/**
+ * Generates synthetic test classes of configurable size, to measure how the
+ * verifier scales. Generated classes carry the usual expected results, so
+ * {@link VerificationTestCaseCollector#getTests(String)} picks them up.
+ *
+ * Every generated method allocates events, lets one variable alias several of
+ * them, and calls switchLights inside nested loops, with times computed from
+ * the loop counters through a chain of integer variables. In safe classes, all
+ * properties hold. Unsafe classes additionally violate every property once, at
+ * the end of the last method.
+ */
+public class WorkloadGenerator {
+
+	private static final Logger logger = LoggerFactory.getLogger(WorkloadGenerator.class);
+
+	/**
+	 * Package of generated classes (kept apart from the hand-written examples)
+	 */
+	public static final String scalingPackage = "ch.ethz.rse.integration.scaling";
+
+	/**
+	 * Iterations of each generated loop
+	 */
+	private static final int LOOP_BOUND = 10;
+
+	/**
+	 * Size of a generated class. All sizes except {@link #methods} are per
+	 * method.
+	 */
+	public static class Parameters {
+
+		public final int methods;
+
+		/**
+		 * nesting depth of loops around the switchLights calls
+		 */
+		public final int loopDepth;
+
+		public final int events;
+
+		/**
+		 * number of events a single variable may point to
+		 */
+		public final int aliasing;
+
+		public final int switchCalls;
+
+		public final int intVars;
+
+		public Parameters(int methods, int loopDepth, int events, int aliasing, int switchCalls, int intVars) {
+			if (methods < 1 || loopDepth < 0 || events < 1 || aliasing < 1 || aliasing > events || switchCalls < 0
+					|| intVars < 1) {
+				throw new IllegalArgumentException("Invalid workload parameters");
+			}
+			this.methods = methods;
+			this.loopDepth = loopDepth;
+			this.events = events;
+			this.aliasing = aliasing;
+			this.switchCalls = switchCalls;
+			this.intVars = intVars;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("methods=%d loopDepth=%d events=%d aliasing=%d switchCalls=%d intVars=%d", this.methods,
+					this.loopDepth, this.events, this.aliasing, this.switchCalls, this.intVars);
+		}
+	}
+
+	/**
+	 * Ladder of workload sizes for scaling runs
+	 */
+	public enum Preset {
+		S(new Parameters(2, 1, 2, 2, 4, 4)),
+		M(new Parameters(8, 2, 4, 3, 16, 8)),
+		L(new Parameters(32, 3, 8, 4, 64, 16)),
+		XL(new Parameters(128, 3, 16, 8, 256, 32));
+
+		public final Parameters parameters;
+
+		Preset(Parameters parameters) {
+			this.parameters = parameters;
+		}
+	}
+
+	private final Parameters p;
+
+	private final Random random;
+
+	private final StringBuilder out = new StringBuilder();
+
+	/**
+	 *
+	 * @param p    size of the generated classes
+	 * @param seed seed for the random choices, so that generated classes are
+	 *             reproducible
+	 */
+	public WorkloadGenerator(Parameters p, long seed) {
+		this.p = p;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 *
+	 * @param className simple name of the generated class
+	 * @param safe      if false, every property is violated once
+	 * @return source code of the class, in {@link #scalingPackage}
+	 */
+	public String generate(String className, boolean safe) {
+		this.out.setLength(0);
+		this.line(0, "package " + scalingPackage + ";");
+		this.line(0, "");
+		this.line(0, "import " + Constants.EventClassName + ";");
+		this.line(0, "");
+		this.line(0, "// generated by " + WorkloadGenerator.class.getName() + ": " + this.p);
+		this.line(0, "");
+		this.line(0, "// expected results:");
+		for (VerificationProperty property : VerificationProperty.values()) {
+			this.line(0, "// " + property + " " + (safe ? Constants.safe : Constants.unsafe));
+		}
+		this.line(0, "");
+		this.line(0, "public class " + className + " {");
+		for (int m = 0; m < this.p.methods; m++) {
+			if (m > 0) {
+				this.line(0, "");
+			}
+			this.method(m, !safe && m == this.p.methods - 1);
+		}
+		this.line(0, "}");
+		return this.out.toString();
+	}
+
+	private void method(int m, boolean violate) {
+		this.line(1, "public static void m" + m + "(int p) {");
+
+		// the largest time computed in the innermost loop
+		int maxTime = LOOP_BOUND - 1;
+		int[] increments = new int[this.p.intVars];
+		for (int j = 1; j < this.p.intVars; j++) {
+			increments[j] = this.random.nextInt(3);
+			maxTime += increments[j];
+		}
+
+		// events, all ending after maxTime
+		for (int k = 0; k < this.p.events; k++) {
+			// events the alias may point to start at 0, like the loop counters
+			int start = k < this.p.aliasing ? 0 : this.random.nextInt(2);
+			int end = maxTime + 1 + this.random.nextInt(10);
+			this.line(2, "Event e" + k + " = new Event(" + start + ", " + end + ");");
+		}
+		if (violate) {
+			this.line(2, "Event bad = new Event(10, 5);");
+		}
+
+		// aliasing
+		this.line(2, "Event a = e0;");
+		for (int k = 1; k < this.p.aliasing; k++) {
+			this.line(2, "if (p > " + k + ") {");
+			this.line(3, "a = e" + k + ";");
+			this.line(2, "}");
+		}
+
+		// nested loops
+		int depth = 2;
+		for (int d = 0; d < this.p.loopDepth; d++) {
+			this.line(depth, "for (int i" + d + " = 0; i" + d + " < " + LOOP_BOUND + "; i" + d + "++) {");
+			depth++;
+		}
+
+		// chain of integer variables
+		String first = this.p.loopDepth > 0 ? "i" + (this.p.loopDepth - 1) : Integer.toString(this.random.nextInt(LOOP_BOUND));
+		this.line(depth, "int v0 = " + first + ";");
+		for (int j = 1; j < this.p.intVars; j++) {
+			this.line(depth, "int v" + j + " = v" + (j - 1) + " + " + increments[j] + ";");
+		}
+
+		// calls, alternating between the alias and single events (which may
+		// start at 1)
+		for (int c = 0; c < this.p.switchCalls; c++) {
+			if (c % 2 == 0) {
+				this.line(depth, "a.switchLights(v" + this.random.nextInt(this.p.intVars) + ");");
+			} else {
+				this.line(depth, "e" + this.random.nextInt(this.p.events) + ".switchLights(v" + (this.p.intVars - 1) + " + 1);");
+			}
+		}
+
+		for (int d = 0; d < this.p.loopDepth; d++) {
+			depth--;
+			this.line(depth, "}");
+		}
+
+		if (violate) {
+			this.line(2, "a.switchLights(-1);");
+			this.line(2, "a.switchLights(" + (maxTime + 100) + ");");
+		}
+		this.line(1, "}");
+	}
+
+	private void line(int indent, String s) {
+		for (int i = 0; i < indent; i++) {
+			this.out.append('\t');
+		}
+		this.out.append(s).append('\n');
+	}
+
+	public static void main(String[] args) throws ParseException {
+		// prepare parser
+		Options options = new Options();
+		options.addOption(new Option("s", "preset", true, "Preset size: S, M, L, XL, or ALL (default: ALL, unless -m is given)"));
+		options.addOption(new Option("m", "methods", true, "Number of methods (custom size, requires -d, -e, -a, -c, -v)"));
+		options.addOption(new Option("d", "depth", true, "Nesting depth of loops"));
+		options.addOption(new Option("e", "events", true, "Number of events per method"));
+		options.addOption(new Option("a", "aliasing", true, "Number of events a variable may point to"));
+		options.addOption(new Option("c", "calls", true, "Number of switchLights calls per method"));
+		options.addOption(new Option("v", "vars", true, "Number of integer variables per method"));
+		options.addOption(new Option("o", "output", true, "Test source directory (default: src/test/java)"));
+		options.addOption(new Option("r", "seed", true, "Random seed (default: 0)"));
+		// build parser
+		CommandLineParser parser = new DefaultParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		File sourceDir = new File(cmd.getOptionValue("o", Configuration.props.getBasedir() + "/src/test/java"));
+		File packageDir = new File(sourceDir, scalingPackage.replace('.', File.separatorChar));
+		long seed = Long.parseLong(cmd.getOptionValue("r", "0"));
+
+		if (cmd.hasOption("m")) {
+			Parameters p = new Parameters(Integer.parseInt(cmd.getOptionValue("m")), Integer.parseInt(cmd.getOptionValue("d")),
+					Integer.parseInt(cmd.getOptionValue("e")), Integer.parseInt(cmd.getOptionValue("a")),
+					Integer.parseInt(cmd.getOptionValue("c")), Integer.parseInt(cmd.getOptionValue("v")));
+			String name = String.format("Scaling_%d_%d_%d_%d_%d_%d", p.methods, p.loopDepth, p.events, p.aliasing,
+					p.switchCalls, p.intVars);
+			WorkloadGenerator.write(packageDir, name, p, seed);
+		} else {
+			String preset = cmd.getOptionValue("s", "ALL");
+			for (Preset s : Preset.values()) {
+				if (preset.equals("ALL") || preset.equals(s.toString())) {
+					WorkloadGenerator.write(packageDir, "Scaling_" + s, s.parameters, seed);
+				}
+			}
+		}
+	}
+
+	private static void write(File packageDir, String name, Parameters p, long seed) {
+		for (boolean safe : new boolean[] { true, false }) {
+			String className = name + (safe ? "_Safe" : "_Unsafe");
+			String source = new WorkloadGenerator(p, seed).generate(className, safe);
+			File f = new File(packageDir, className + ".java");
+			FileUtilsWrapper.writeStringToFile(f, source);
+			logger.info("Generated {} ({})", f, p);
+		}
+	}
+}
@@ -1,11 +1,14 @@
 package ch.ethz.rse.utils;
 
 import java.io.InputStream;
+import java.util.List;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.ethz.rse.numerical.AbstractDomain;
+
 /**
  * 
  * Loads properties from the properties file. Needed to provide configuration
@@ -31,6 +34,11 @@ public class Configuration {
 	 */
 	private final Properties prop = new Properties();
 
+	/**
+	 * Settings overridden at runtime, see {@link #set(String, String)}
+	 */
+	private final Properties overrides = new Properties();
+
 	private Configuration() {
 		InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(propertiesFile);
 		if (is == null) {
@@ -61,4 +69,173 @@ public class Configuration {
 		return this.prop.getProperty("BASEDIR");
 	}
 
+	/**
+	 * 
+	 * @return number of threads used to analyze the methods of a class (1 runs
+	 *         the analysis sequentially)
+	 */
+	public int getAnalysisThreads() {
+		return Integer.parseInt(this.getProperty("ANALYSIS_THREADS", "1"));
+	}
+
+	/**
+	 * 
+	 * @return abstract domains to analyze with, from cheapest to most precise.
+	 *         Later domains are only used for properties earlier domains could
+	 *         not prove.
+	 */
+	public List<AbstractDomain> getDomains() {
+		return AbstractDomain.parse(this.getProperty("DOMAIN", AbstractDomain.POLKA.toString()));
+	}
+
+	/**
+	 *
+	 * @return number of iterations at a loop head before widening is applied
+	 */
+	public int getWideningDelay() {
+		return Integer.parseInt(this.getProperty("WIDENING_DELAY", "6"));
+	}
+
+	/**
+	 *
+	 * @return number of narrowing passes over each loop after it stabilized (0
+	 *         disables narrowing)
+	 */
+	public int getNarrowingPasses() {
+		return Integer.parseInt(this.getProperty("NARROWING_PASSES", "0"));
+	}
+
+	/**
+	 *
+	 * @return true if expensive sanity checks of abstract states should run (for
+	 *         debugging)
+	 */
+	public boolean getSanityChecks() {
+		return Boolean.parseBoolean(this.getProperty("SANITY_CHECKS", "false"));
+	}
+
+	/**
+	 *
+	 * @return true if calls are analyzed using summaries of the called methods,
+	 *         false if the results of calls are unknown
+	 */
+	public boolean getInterprocedural() {
+		return Boolean.parseBoolean(this.getProperty("INTERPROCEDURAL", "false"));
+	}
+
+	/**
+	 *
+	 * @return true if only the states of units that may reach a queried statement
+	 *         are computed (see {@link ch.ethz.rse.numerical.QueryCone}), false if
+	 *         the states of all units are computed
+	 */
+	public boolean getDemandDriven() {
+		return Boolean.parseBoolean(this.getProperty("DEMAND_DRIVEN", "false"));
+	}
+
+	/**
+	 *
+	 * @return directory of the store of verification results reused across runs
+	 *         (empty to disable the store)
+	 */
+	public String getResultCache() {
+		return this.getProperty("RESULT_CACHE", "");
+	}
+
+	/**
+	 *
+	 * @return directory of the cache of per-method analysis states reused across
+	 *         runs (empty to disable the cache)
+	 */
+	public String getStateCache() {
+		return this.getProperty("STATE_CACHE", "");
+	}
+
+	/**
+	 *
+	 * @return number of most recent events of each fixpoint computation kept for
+	 *         debugging (0 disables recording), see
+	 *         {@link ch.ethz.rse.numerical.FixpointTrace}
+	 */
+	public int getFixpointTrace() {
+		return Integer.parseInt(this.getProperty("FIXPOINT_TRACE", "0"));
+	}
+
+	/**
+	 *
+	 * @return directory receiving the recorded fixpoint traces of failed
+	 *         analyses
+	 */
+	public String getFixpointTraceDirectory() {
+		return this.getProperty("FIXPOINT_TRACE_DIR", "logs/traces");
+	}
+
+	/**
+	 *
+	 * @return maximal total size of the Apron states a verification task may
+	 *         hold at once, in the units of Apron's size estimate (0: no limit)
+	 */
+	public long getNativeMemoryBudget() {
+		return Long.parseLong(this.getProperty("NATIVE_MEMORY_BUDGET", "0"));
+	}
+
+	/**
+	 *
+	 * @return directory receiving a JSON report of the metrics of every
+	 *         verification task (empty to disable the reports)
+	 */
+	public String getMetricsDirectory() {
+		return this.getProperty("METRICS_DIR", "");
+	}
+
+	/**
+	 *
+	 * @return file receiving the metrics of all tasks of this JVM in the
+	 *         Prometheus text format, e.g., for the textfile collector of a node
+	 *         exporter (empty to disable the file)
+	 */
+	public String getPrometheusFile() {
+		return this.getProperty("PROMETHEUS_FILE", "");
+	}
+
+	/**
+	 *
+	 * @return all settings that may affect the result of verification, as a
+	 *         string
+	 */
+	public String getAnalysisSettings() {
+		return "DOMAIN=" + this.getDomains() + ";WIDENING_DELAY=" + this.getWideningDelay() + ";NARROWING_PASSES=" + this.getNarrowingPasses()
+				+ ";INTERPROCEDURAL=" + this.getInterprocedural() + ";DEMAND_DRIVEN=" + this.getDemandDriven();
+	}
+
+	/**
+	 * Override a setting, e.g., from a command line flag
+	 * 
+	 * @param key   name of the setting
+	 * @param value new value of the setting
+	 */
+	public void set(String key, String value) {
+		this.overrides.setProperty(key, value);
+	}
+
+	/**
+	 * Look up an optional setting. Overrides take precedence over JVM system
+	 * properties (e.g., <code>-DANALYSIS_THREADS=4</code>), which take
+	 * precedence over {@link #propertiesFile}.
+	 * 
+	 * @param key          name of the setting
+	 * @param defaultValue value to use if the setting is absent
+	 * @return value of the setting
+	 */
+	private String getProperty(String key, String defaultValue) {
+		String value = this.overrides.getProperty(key);
+		if (value == null) {
+			value = System.getProperty(key);
+		}
+		if (value == null) {
+			value = this.prop.getProperty(key, defaultValue);
+		}
+		return value;
+	}
+
 }
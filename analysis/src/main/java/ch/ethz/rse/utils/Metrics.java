@@ -0,0 +1,248 @@
+package ch.ethz.rse.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timers and counters of a verification task: time spent per phase (e.g.,
+ * loading classes into Soot, SPARK, fixpoint computation), event counts
+ * (e.g., transfer function applications), and statistics per analyzed
+ * method. Safe to update from multiple threads.
+ *
+ * Reports are written as one JSON file per task (see
+ * {@link Configuration#getMetricsDirectory()}) and, optionally, as a
+ * Prometheus text file holding the totals of all tasks of this JVM (see
+ * {@link Configuration#getPrometheusFile()}).
+ */
+public class Metrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+	/**
+	 * Metrics of all tasks reported so far
+	 */
+	private static final Metrics total = new Metrics();
+
+	/**
+	 * Time spent per phase, in nanoseconds (sorted, for deterministic reports)
+	 */
+	private final ConcurrentMap<String, LongAdder> nanos = new ConcurrentSkipListMap<String, LongAdder>();
+
+	/**
+	 * Number of events per counter
+	 */
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+
+	/**
+	 * Statistics per analyzed method, in order of completion
+	 */
+	private final Queue<Map<String, Object>> methods = new ConcurrentLinkedQueue<Map<String, Object>>();
+
+	/**
+	 *
+	 * @param phase name of the phase
+	 * @param nanos time spent in phase
+	 */
+	public void addTime(String phase, long nanos) {
+		this.nanos.computeIfAbsent(phase, k -> new LongAdder()).add(nanos);
+	}
+
+	/**
+	 *
+	 * @param counter name of the counter
+	 * @param amount  number of events to add to counter
+	 */
+	public void add(String counter, long amount) {
+		this.counters.computeIfAbsent(counter, k -> new LongAdder()).add(amount);
+	}
+
+	/**
+	 *
+	 * @param method statistics of an analyzed method, with string or numeric
+	 *               values
+	 */
+	public void addMethod(Map<String, Object> method) {
+		this.methods.add(method);
+	}
+
+	/**
+	 *
+	 * @return time spent in phase so far, in nanoseconds
+	 */
+	public long getNanos(String phase) {
+		LongAdder adder = this.nanos.get(phase);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 *
+	 * @return number of events of counter so far
+	 */
+	public long getCount(String counter) {
+		LongAdder adder = this.counters.get(counter);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * Add all timers, counters and method statistics of other to this
+	 */
+	public void addAll(Metrics other) {
+		for (Map.Entry<String, LongAdder> e : other.nanos.entrySet()) {
+			this.addTime(e.getKey(), e.getValue().sum());
+		}
+		for (Map.Entry<String, LongAdder> e : other.counters.entrySet()) {
+			this.add(e.getKey(), e.getValue().sum());
+		}
+		this.methods.addAll(other.methods);
+	}
+
+	/**
+	 *
+	 * @param task name of the task these metrics belong to
+	 * @return these metrics as a JSON object
+	 */
+	public String toJson(String task) {
+		StringBuilder ret = new StringBuilder();
+		ret.append("{\n  \"task\": ").append(Metrics.quote(task)).append(",\n  \"phasesMilliseconds\": {");
+		Metrics.appendEntries(ret, this.nanos, true);
+		ret.append("},\n  \"counters\": {");
+		Metrics.appendEntries(ret, this.counters, false);
+		ret.append("},\n  \"methods\": [");
+		for (Iterator<Map<String, Object>> it = this.methods.iterator(); it.hasNext();) {
+			ret.append("\n    {");
+			for (Iterator<Map.Entry<String, Object>> fields = it.next().entrySet().iterator(); fields.hasNext();) {
+				Map.Entry<String, Object> field = fields.next();
+				ret.append(Metrics.quote(field.getKey())).append(": ");
+				if (field.getValue() instanceof Number) {
+					ret.append(field.getValue());
+				} else {
+					ret.append(Metrics.quote(String.valueOf(field.getValue())));
+				}
+				if (fields.hasNext()) {
+					ret.append(", ");
+				}
+			}
+			ret.append(it.hasNext() ? "}," : "}");
+		}
+		ret.append(this.methods.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return ret.toString();
+	}
+
+	/**
+	 *
+	 * @return the timers and counters (but not the method statistics) of these
+	 *         metrics, in the Prometheus text format
+	 */
+	public String toPrometheus() {
+		StringBuilder ret = new StringBuilder();
+		ret.append("# HELP verifier_phase_seconds_total Time spent in each phase of verification.\n");
+		ret.append("# TYPE verifier_phase_seconds_total counter\n");
+		for (Map.Entry<String, LongAdder> e : this.nanos.entrySet()) {
+			ret.append("verifier_phase_seconds_total{phase=").append(Metrics.quote(e.getKey())).append("} ")
+					.append(String.format(Locale.ROOT, "%.9f", e.getValue().sum() / 1e9)).append('\n');
+		}
+		for (Map.Entry<String, LongAdder> e : this.counters.entrySet()) {
+			String name = "verifier_" + e.getKey() + "_total";
+			ret.append("# HELP ").append(name).append(" Number of ").append(e.getKey().replace('_', ' ')).append(" events.\n");
+			ret.append("# TYPE ").append(name).append(" counter\n");
+			ret.append(name).append(' ').append(e.getValue().sum()).append('\n');
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Write the report of a finished task, and update the totals of all tasks
+	 *
+	 * @param task    name of the task
+	 * @param metrics metrics of task
+	 */
+	public static void report(String task, Metrics metrics) {
+		Metrics.total.addAll(metrics.withoutMethods());
+		Metrics.total.add("tasks", 1);
+
+		String directory = Configuration.props.getMetricsDirectory();
+		if (!directory.isEmpty()) {
+			String file = task.replaceAll("[^A-Za-z0-9._-]", "_") + ".json";
+			Metrics.write(Paths.get(directory, file), metrics.toJson(task));
+		}
+		String prometheus = Configuration.props.getPrometheusFile();
+		if (!prometheus.isEmpty()) {
+			Metrics.write(Paths.get(prometheus), Metrics.total.toPrometheus());
+		}
+	}
+
+	/**
+	 *
+	 * @return a copy of the timers and counters of these metrics
+	 */
+	private Metrics withoutMethods() {
+		Metrics ret = new Metrics();
+		ret.addAll(this);
+		ret.methods.clear();
+		return ret;
+	}
+
+	/**
+	 * Replace file by content, without exposing partially written files to
+	 * readers (e.g., a scraping node exporter)
+	 */
+	private static synchronized void write(Path file, String content) {
+		try {
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.error("Error writing metrics to {}: {}", file, e);
+		}
+	}
+
+	private static void appendEntries(StringBuilder ret, Map<String, LongAdder> entries, boolean nanos) {
+		for (Iterator<Map.Entry<String, LongAdder>> it = entries.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, LongAdder> e = it.next();
+			ret.append("\n    ").append(Metrics.quote(e.getKey())).append(": ");
+			if (nanos) {
+				ret.append(String.format(Locale.ROOT, "%.3f", e.getValue().sum() / 1e6));
+			} else {
+				ret.append(e.getValue().sum());
+			}
+			ret.append(it.hasNext() ? "," : "\n  ");
+		}
+	}
+
+	/**
+	 *
+	 * @return s as a quoted string, valid in JSON and in Prometheus label values
+	 */
+	private static String quote(String s) {
+		StringBuilder ret = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				ret.append('\\').append(c);
+			} else if (c == '\n') {
+				ret.append("\\n");
+			} else if (c < 0x20) {
+				ret.append(String.format("\\u%04x", (int) c));
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.append('"').toString();
+	}
+}
@@ -1,23 +1,82 @@
 package ch.ethz.rse.verify;
 
 import ch.ethz.rse.VerificationProperty;
-import ch.ethz.rse.numerical.NumericalAnalysis;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import ch.ethz.rse.utils.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import soot.SootMethod;
 
-import java.util.HashMap;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public abstract class AVerifier {
 
 	private static final Logger logger = LoggerFactory.getLogger(AVerifier.class);
+
+	/**
+	 * Number of properties checked, and number of those decided by
+	 * {@link #decideConstant(VerificationProperty)}, since the start of the JVM
+	 */
+	private static final AtomicLong constantChecks = new AtomicLong();
+
+	private static final AtomicLong constantHits = new AtomicLong();
+
+	/**
+	 * time spent running the numerical analysis of a class, and number of such
+	 * runs, per domain, since the start of the JVM (to estimate the time saved
+	 * by skipping a domain)
+	 */
+	private static final Metrics domainRuns = new Metrics();
 	
 	/**
-	 * result of running numerical analysis, per method
+	 * result of running numerical analysis, per method, in the domain currently
+	 * being checked (concurrent, as methods may be analyzed in parallel)
+	 */
+	protected Map<SootMethod, QueryStates> numericalAnalysis = new ConcurrentHashMap<SootMethod, QueryStates>();
+
+	/**
+	 * timers and counters of this verifier
+	 */
+	protected final Metrics metrics = new Metrics();
+
+	/**
+	 * name of the verified class, for logging
+	 */
+	private final String name;
+
+	/**
+	 * abstract domains to analyze with, from cheapest to most precise
+	 */
+	private final List<AbstractDomain> domains;
+
+	/**
+	 * results of running numerical analysis, per domain (the analysis does not
+	 * depend on the property, so it is shared by all checks)
+	 */
+	private final Map<AbstractDomain, Map<SootMethod, QueryStates>> analyses = new EnumMap<AbstractDomain, Map<SootMethod, QueryStates>>(AbstractDomain.class);
+
+	/**
+	 * 
+	 * @param name    name of the verified class, for logging
+	 * @param domains abstract domains to analyze with, from cheapest to most
+	 *                precise
 	 */
-	protected final Map<SootMethod, NumericalAnalysis> numericalAnalysis = new HashMap<SootMethod, NumericalAnalysis>();
+	protected AVerifier(String name, List<AbstractDomain> domains) {
+		if (domains.isEmpty()) {
+			throw new IllegalArgumentException("No abstract domain");
+		}
+		this.name = name;
+		this.domains = domains;
+	}
 
 	/**
 	 * 
@@ -25,30 +84,211 @@ public abstract class AVerifier {
 	 * @return true if <code>property</code> is SAFE, false if it may be UNSAFE
 	 */
 	public boolean check(VerificationProperty property) {
+		return this.check(EnumSet.of(property)).get(property);
+	}
+
+	/**
+	 * Check multiple properties, running the numerical analysis only once per
+	 * domain. Each domain only checks the properties that cheaper domains could
+	 * not prove.
+	 * 
+	 * @param properties
+	 * @return for each property, true if it is SAFE, false if it may be UNSAFE
+	 */
+	public Map<VerificationProperty, Boolean> check(EnumSet<VerificationProperty> properties) {
 		long startTime = System.nanoTime();
 
-		this.runNumericalAnalysis(property);
+		Map<VerificationProperty, Boolean> ret = new EnumMap<VerificationProperty, Boolean>(VerificationProperty.class);
+		EnumSet<VerificationProperty> unproven = EnumSet.copyOf(properties);
+
+		// programs the numerical analysis rejects are rejected before deciding
+		// properties without it
+		this.validate();
+
+		// properties decided from constant arguments need no numerical analysis
+		int hits = 0;
+		for (VerificationProperty property : properties) {
+			Boolean isSafe = this.decideConstant(property);
+			if (isSafe != null) {
+				ret.put(property, isSafe);
+				unproven.remove(property);
+				hits++;
+			}
+		}
+		this.metrics.add("properties_checked", properties.size());
+		this.metrics.add("properties_decided_constant", hits);
+		long totalChecks = constantChecks.addAndGet(properties.size());
+		long totalHits = constantHits.addAndGet(hits);
+		logger.info("Decided {} of {} properties of {} from constant arguments ({} of {} since start)", hits, properties.size(),
+				this.name, totalHits, totalChecks);
+
+		int used = 0;
+		while (used < this.domains.size() && !unproven.isEmpty()) {
+			AbstractDomain domain = this.domains.get(used++);
+			long domainStartTime = System.nanoTime();
+
+			this.analyze(domain);
 
-		boolean ret;
+			for (VerificationProperty property : EnumSet.copyOf(unproven)) {
+				long propertyStartTime = System.nanoTime();
+
+				boolean isSafe = this.checkProperty(property);
+				ret.put(property, isSafe);
+				if (isSafe) {
+					unproven.remove(property);
+				}
+
+				long propertyEndTime = System.nanoTime();
+				this.metrics.addTime("check_" + property.toString().toLowerCase(), propertyEndTime - propertyStartTime);
+				long durationMilliseconds = (propertyEndTime - propertyStartTime) / 1000000;
+				logger.debug("Runtime: Checked property {} with {} in {}ms", property, domain, durationMilliseconds);
+			}
+
+			long domainEndTime = System.nanoTime();
+			long durationMilliseconds = (domainEndTime - domainStartTime) / 1000000;
+			logger.debug("Runtime: Used {} in {}ms, unproven: {}", domain, durationMilliseconds, unproven);
+		}
+
+		if (used < this.domains.size() && !properties.isEmpty()) {
+			// escalation stopped early
+			List<AbstractDomain> skipped = this.domains.subList(used, this.domains.size());
+			long saved = AVerifier.estimateNanos(skipped);
+			if (saved < 0) {
+				logger.info("Skipped analysis of {} with {} (all properties decided), time saved unknown", this.name, skipped);
+			} else {
+				this.metrics.addTime("skipped_domains", saved);
+				logger.info("Skipped analysis of {} with {} (all properties decided), saving about {}ms", this.name, skipped,
+						saved / 1000000);
+			}
+		}
+
+		long endTime = System.nanoTime();
+		long durationMilliseconds = (endTime - startTime) / 1000000;
+		logger.debug("Runtime: Checked properties {} in {}ms", properties, durationMilliseconds);
+
+		return ret;
+	}
+
+	/**
+	 * 
+	 * @return timers and counters of this verifier, e.g., of the numerical
+	 *         analysis and of the checks
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Populate {@link #numericalAnalysis} using the cheapest domain, unless this
+	 * was done already
+	 */
+	public void analyze() {
+		this.analyze(this.domains.get(0));
+	}
+
+	/**
+	 * Populate {@link #numericalAnalysis} using the given domain, unless this was
+	 * done already
+	 */
+	private void analyze(AbstractDomain domain) {
+		Map<SootMethod, QueryStates> analysis = this.analyses.get(domain);
+		if (analysis != null) {
+			this.numericalAnalysis = analysis;
+			return;
+		}
+		long startTime = System.nanoTime();
+		long startGc = AVerifier.getGarbageCollectionMilliseconds();
+		long startShared = NumericalStateWrapper.getSharedCopies();
+		long startCopiesOnWrite = NumericalStateWrapper.getCopiesOnWrite();
+		long startChecks = NumericalStateWrapper.getConvergenceChecks();
+		long startShortcuts = NumericalStateWrapper.getConvergenceShortcuts();
+		long startCheckNanos = NumericalStateWrapper.getConvergenceNanos();
+
+		this.numericalAnalysis = new ConcurrentHashMap<SootMethod, QueryStates>();
+		this.runNumericalAnalysis(domain);
+		this.analyses.put(domain, this.numericalAnalysis);
+
+		long endTime = System.nanoTime();
+		this.metrics.addTime("numerical_analysis", endTime - startTime);
+		domainRuns.addTime(domain.toString(), endTime - startTime);
+		domainRuns.add(domain.toString(), 1);
+		logger.debug("Runtime: Ran numerical analysis with {} in {}ms (GC: {}ms)", domain, (endTime - startTime) / 1000000,
+				AVerifier.getGarbageCollectionMilliseconds() - startGc);
+		// counters are global, so they include concurrently verified classes
+		long shared = NumericalStateWrapper.getSharedCopies() - startShared;
+		long copiesOnWrite = NumericalStateWrapper.getCopiesOnWrite() - startCopiesOnWrite;
+		this.metrics.addTime("gc", (AVerifier.getGarbageCollectionMilliseconds() - startGc) * 1000000);
+		this.metrics.add("shared_copies", shared);
+		this.metrics.add("copies_on_write", copiesOnWrite);
+		logger.debug("Shared {} states instead of copying them, {} were copied on write ({} native copies avoided)", shared,
+				copiesOnWrite, shared - copiesOnWrite);
+		logger.debug("Runtime: {} convergence checks ({} decided without Apron) in {}ms",
+				NumericalStateWrapper.getConvergenceChecks() - startChecks,
+				NumericalStateWrapper.getConvergenceShortcuts() - startShortcuts,
+				(NumericalStateWrapper.getConvergenceNanos() - startCheckNanos) / 1000000);
+	}
+
+	/**
+	 * 
+	 * @param domains domains not run for a class
+	 * @return the time the numerical analysis of a class took on average with
+	 *         each of domains (summed over domains), or -1 if some domain has
+	 *         not run yet
+	 */
+	private static long estimateNanos(List<AbstractDomain> domains) {
+		long ret = 0;
+		for (AbstractDomain domain : domains) {
+			long runs = domainRuns.getCount(domain.toString());
+			if (runs == 0) {
+				return -1;
+			}
+			ret += domainRuns.getNanos(domain.toString()) / runs;
+		}
+		return ret;
+	}
+
+	/**
+	 * 
+	 * @return total time spent in garbage collection by this JVM
+	 */
+	private static long getGarbageCollectionMilliseconds() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, gc.getCollectionTime());
+		}
+		return total;
+	}
+
+	private boolean checkProperty(VerificationProperty property) {
 		switch (property) {
 		case START_END_ORDER:
-			ret = this.checkStartEndOrder();
-			break;
+			return this.checkStartEndOrder();
 		case AFTER_START:
-			ret = this.checkAfterStart();
-			break;
+			return this.checkAfterStart();
 		case BEFORE_END:
-			ret = this.checkBeforeEnd();
-			break;
+			return this.checkBeforeEnd();
 		default:
 			throw new UnsupportedOperationException(property.toString());
 		}
+	}
 
-		long endTime = System.nanoTime();
-		long durationMilliseconds = (endTime - startTime) / 1000000;
-		logger.debug("Runtime: Checked property {} in {}ms", property, durationMilliseconds);
+	/**
+	 * Reject the verified program if the numerical analysis cannot handle it
+	 * 
+	 * @throws UnsupportedOperationException if the program is not supported
+	 */
+	protected void validate() {
+	}
 
-		return ret;
+	/**
+	 * Decide property without numerical analysis, if possible
+	 * 
+	 * @param property
+	 * @return true if property is SAFE, false if it may be UNSAFE, null if
+	 *         numerical analysis is needed
+	 */
+	protected Boolean decideConstant(VerificationProperty property) {
+		return null;
 	}
 
 	/**
@@ -70,9 +310,9 @@ public abstract class AVerifier {
 	protected abstract boolean checkBeforeEnd();
 
 	/**
-	 * Populate {@link #numericalAnalysis}
+	 * Populate {@link #numericalAnalysis} (called at most once per domain)
 	 * 
-	 * @param property the property about to be verified
+	 * @param domain the abstract domain to analyze with
 	 */
-	protected abstract void runNumericalAnalysis(VerificationProperty property);
+	protected abstract void runNumericalAnalysis(AbstractDomain domain);
 }
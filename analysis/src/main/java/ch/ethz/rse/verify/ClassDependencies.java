@@ -0,0 +1,205 @@
+package ch.ethz.rse.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The application classes a class to verify depends on: the class itself and
+ * all classes on its class path it transitively references, with a digest of
+ * each class file. Library classes (e.g., of the JDK) are not included.
+ */
+public class ClassDependencies {
+
+	/**
+	 * Class names referenced by descriptors and signatures
+	 */
+	private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+)[;<]");
+
+	/**
+	 * Digest of the class file of each dependency, keyed by internal class name
+	 * (e.g., <code>java/lang/Object</code>)
+	 */
+	private final TreeMap<String, byte[]> digests = new TreeMap<String, byte[]>();
+
+	/**
+	 * Dependencies referenced by each dependency
+	 */
+	private final Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+
+	private ClassDependencies() {
+	}
+
+	/**
+	 *
+	 * @param tc class to verify
+	 * @return the dependencies of tc, read from the class files on its class
+	 *         path
+	 */
+	public static ClassDependencies of(ClassToVerify tc) {
+		ClassDependencies ret = new ClassDependencies();
+		Map<String, Set<String>> referenced = new HashMap<String, Set<String>>();
+		Deque<String> worklist = new ArrayDeque<String>();
+		worklist.add(tc.getPackageName().replace('.', '/'));
+		while (!worklist.isEmpty()) {
+			String name = worklist.poll();
+			if (referenced.containsKey(name)) {
+				continue;
+			}
+			File f = new File(tc.getClassPath(), name + ".class");
+			if (!f.isFile()) {
+				// e.g., library classes
+				referenced.put(name, Collections.<String>emptySet());
+				continue;
+			}
+			try {
+				byte[] bytes = Files.readAllBytes(f.toPath());
+				ret.digests.put(name, ClassDependencies.sha256().digest(bytes));
+				Set<String> names = ClassDependencies.getReferencedClasses(bytes);
+				names.remove(name);
+				referenced.put(name, names);
+				worklist.addAll(names);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		// only keep references to classes on the class path
+		for (String name : ret.digests.keySet()) {
+			Set<String> names = new HashSet<String>(referenced.get(name));
+			names.retainAll(ret.digests.keySet());
+			ret.references.put(name, names);
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @return digest of the class file of each dependency, keyed by internal
+	 *         class name, in lexicographic order
+	 */
+	public SortedMap<String, byte[]> getDigests() {
+		return Collections.unmodifiableSortedMap(this.digests);
+	}
+
+	/**
+	 *
+	 * @param changed internal names of changed classes
+	 * @return the dependencies that are in changed, or that transitively
+	 *         reference a class in changed
+	 */
+	public Set<String> getAffected(Set<String> changed) {
+		Set<String> affected = new HashSet<String>();
+		for (String name : this.digests.keySet()) {
+			if (changed.contains(name)) {
+				affected.add(name);
+			}
+		}
+		// propagate backwards along references until nothing changes
+		boolean grown = !affected.isEmpty();
+		while (grown) {
+			grown = false;
+			for (Map.Entry<String, Set<String>> e : this.references.entrySet()) {
+				if (!affected.contains(e.getKey()) && !Collections.disjoint(e.getValue(), affected)) {
+					affected.add(e.getKey());
+					grown = true;
+				}
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 *
+	 * @param internalName internal name of a class, e.g.,
+	 *                     <code>java/lang/Object</code>
+	 * @return the fully qualified name of the class, e.g.,
+	 *         <code>java.lang.Object</code>
+	 */
+	public static String toClassName(String internalName) {
+		return internalName.replace('/', '.');
+	}
+
+	/**
+	 *
+	 * @param bytes content of a .class file
+	 * @return internal names of the classes referenced in its constant pool
+	 */
+	private static Set<String> getReferencedClasses(byte[] bytes) {
+		ByteBuffer b = ByteBuffer.wrap(bytes);
+		// skip magic number and version
+		b.position(8);
+		int count = b.getShort() & 0xffff;
+
+		Set<String> names = new HashSet<String>();
+		for (int i = 1; i < count; i++) {
+			int tag = b.get();
+			switch (tag) {
+			case 1: // Utf8
+				byte[] s = new byte[b.getShort() & 0xffff];
+				b.get(s);
+				Matcher m = DESCRIPTOR_CLASS.matcher(new String(s, StandardCharsets.UTF_8));
+				while (m.find()) {
+					names.add(m.group(1));
+				}
+				if (s.length > 0 && s[0] != '[' && s[0] != '(') {
+					// may be the name of a class entry
+					names.add(new String(s, StandardCharsets.UTF_8));
+				}
+				break;
+			case 7: // Class
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				b.position(b.position() + 2);
+				break;
+			case 15: // MethodHandle
+				b.position(b.position() + 3);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				b.position(b.position() + 4);
+				break;
+			case 5: // Long
+			case 6: // Double
+				b.position(b.position() + 8);
+				// takes two entries
+				i++;
+				break;
+			default:
+				throw new RuntimeException("Unknown constant pool tag " + tag);
+			}
+		}
+		return names;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
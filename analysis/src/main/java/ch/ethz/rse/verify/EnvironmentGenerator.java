@@ -1,15 +1,23 @@
 package ch.ethz.rse.verify;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import com.google.common.collect.Iterables;
 
 import apron.Environment;
+import ch.ethz.rse.numerical.NumericalAnalysis;
+import ch.ethz.rse.numerical.QueryCone;
 import ch.ethz.rse.pointer.EventInitializer;
 import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.pointer.ProgramIndex;
 import ch.ethz.rse.utils.Constants;
 import soot.IntegerType;
 import soot.Local;
@@ -17,8 +25,12 @@ import soot.PointsToAnalysis;
 import soot.SootMethod;
 import soot.Unit;
 import soot.Value;
+import soot.ValueBox;
 import soot.jimple.DefinitionStmt;
+import soot.jimple.IfStmt;
 import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.internal.JInvokeStmt;
 import soot.jimple.internal.JimpleLocal;
 import soot.util.Chain;
 
@@ -43,33 +55,101 @@ public class EnvironmentGenerator {
 	 */
 	private List<String> ints = new LinkedList<String>();
 
+	/**
+	 * Variables in {@link #ints}
+	 */
+	private final Set<Local> tracked = new HashSet<Local>();
+
 	private final Environment env;
 
 	/**
+	 * Number of integer variables of {@link #method}, tracked or not
+	 */
+	private int variableCount;
+
+	/**
+	 * Only tracks variables the checked properties may depend on: arguments of
+	 * event initializers and switchLights calls, variables in conditions (which
+	 * may make these calls unreachable), and, transitively, all variables they
+	 * are computed from. Assignments to other variables cannot influence the
+	 * tracked ones, so dropping them does not lose precision.
 	 * 
 	 * @param method
 	 */
 	public EnvironmentGenerator(SootMethod method, PointsToInitializer pointsTo) {
+		this(method, pointsTo, false);
+	}
+
+	/**
+	 * Like {@link #EnvironmentGenerator(SootMethod, PointsToInitializer)}, but if
+	 * summarize is set, also tracks returned values and adds the variables of
+	 * {@link #getSummaryVariables(SootMethod)}
+	 * 
+	 * @param method
+	 * @param summarize true if the summary of method will be computed
+	 */
+	public EnvironmentGenerator(SootMethod method, PointsToInitializer pointsTo, boolean summarize) {
+		this(method, pointsTo, summarize, null);
+	}
+
+	/**
+	 * Like {@link #EnvironmentGenerator(SootMethod, PointsToInitializer, boolean)},
+	 * but only considers conditions and assignments in cone, as statements
+	 * outside of it cannot influence the states in it
+	 * 
+	 * @param method
+	 * @param summarize true if the summary of method will be computed
+	 * @param cone      units whose states are computed, or null for all units of
+	 *                  method
+	 */
+	public EnvironmentGenerator(SootMethod method, PointsToInitializer pointsTo, boolean summarize, QueryCone cone) {
 		this.method = method;
 		this.pointsTo = pointsTo;
 
-		// TODO probably need to do something with pointsTo
+		ProgramIndex index = pointsTo.getIndex(method);
 
-		for (Unit u : method.getActiveBody().getUnits()) {
-			if (!(u instanceof DefinitionStmt)) {
-				continue;
+		Deque<Local> worklist = new ArrayDeque<Local>();
+		for (EventInitializer init : pointsTo.getInitializers(method)) {
+			for (Value arg : init.getStatement().getInvokeExpr().getArgs()) {
+				this.track(arg, worklist);
 			}
+		}
+		for (JInvokeStmt call : index.getSwitchLightsCalls()) {
+			for (Value arg : call.getInvokeExpr().getArgs()) {
+				this.track(arg, worklist);
+			}
+		}
+		for (IfStmt ifStmt : index.getIfStatements()) {
+			if (cone == null || cone.contains(ifStmt)) {
+				this.track(ifStmt.getCondition(), worklist);
+			}
+		}
+		if (summarize) {
+			for (ReturnStmt returnStmt : index.getReturnStatements()) {
+				this.track(returnStmt.getOp(), worklist);
+			}
+		}
 
-			DefinitionStmt sd = (DefinitionStmt) u;
-			Value left = sd.getLeftOp();
-
-			if (!(left instanceof JimpleLocal)) {
-				continue;
+		// backward slice: track everything tracked variables are computed from
+		while (!worklist.isEmpty()) {
+			Local l = worklist.pop();
+			for (DefinitionStmt definition : index.getDefinitions(l)) {
+				if (cone == null || cone.contains(definition)) {
+					this.track(definition.getRightOp(), worklist);
+				}
 			}
+		}
 
-			JimpleLocal local = (JimpleLocal) left;
-			if (!ints.contains(local.getName())) {
-				ints.add(local.getName());
+		// keep order of definitions, for deterministic environments
+		Set<Local> ordered = new LinkedHashSet<Local>(index.getIntegerVariables());
+		ordered.retainAll(this.tracked);
+		ordered.addAll(this.tracked);
+		for (Local l : ordered) {
+			ints.add(l.getName());
+		}
+		if (summarize) {
+			for (String v : EnvironmentGenerator.getSummaryVariables(method)) {
+				ints.add(v);
 			}
 		}
 
@@ -77,7 +157,59 @@ public class EnvironmentGenerator {
 		
 		String reals[] = {}; // we are not analyzing real numbers
 		this.env = new Environment(intsArr, reals);
-		logger.debug(this.env.toString());
+		this.variableCount = index.getIntegerVariables().size();
+		logger.debug("Tracking {} of {} variables in {}: {}", this.ints.size(), this.variableCount, method.getName(), this.env);
+	}
+
+	/**
+	 * Track all variables in v
+	 */
+	private void track(Value v, Deque<Local> worklist) {
+		if (v instanceof Local) {
+			Local l = (Local) v;
+			if (this.tracked.add(l)) {
+				worklist.push(l);
+			}
+		}
+		for (ValueBox box : v.getUseBoxes()) {
+			this.track(box.getValue(), worklist);
+		}
+	}
+
+	/**
+	 * 
+	 * @param method
+	 * @return the variables of the summary of method: one per integer parameter,
+	 *         holding its value on entry, and one for an integer return value
+	 */
+	public static String[] getSummaryVariables(SootMethod method) {
+		List<String> vars = new LinkedList<String>();
+		for (int k = 0; k < method.getParameterCount(); k++) {
+			if (method.getParameterType(k) instanceof IntegerType) {
+				vars.add(NumericalAnalysis.ARGUMENT + k);
+			}
+		}
+		if (method.getReturnType() instanceof IntegerType) {
+			vars.add(NumericalAnalysis.RETURN);
+		}
+		return Iterables.toArray(vars, String.class);
+	}
+
+	/**
+	 * 
+	 * @return number of integer variables of the method, tracked or not
+	 */
+	public int getVariableCount() {
+		return this.variableCount;
+	}
+
+	/**
+	 * 
+	 * @param l
+	 * @return true if l is part of the environment
+	 */
+	public boolean isTracked(Local l) {
+		return this.tracked.contains(l);
 	}
 
 	public Environment getEnvironment() {
@@ -0,0 +1,170 @@
+package ch.ethz.rse.verify;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.ethz.rse.numerical.MethodSummary;
+import ch.ethz.rse.numerical.NumericalAnalysis;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import ch.ethz.rse.pointer.EventInitializer;
+import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.pointer.ProgramIndex;
+import soot.Local;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.internal.JInvokeStmt;
+import soot.jimple.internal.JVirtualInvokeExpr;
+
+/**
+ * States of one method after the statements the checks query, i.e., after
+ * calls to the Event constructor and to switchLights. The states of all other
+ * statements are not kept, and the kept states may be projected to the
+ * variables the checks read.
+ */
+public class QueryStates {
+
+	/**
+	 * State after each query, in the order of {@link #getQueries(ProgramIndex)}
+	 */
+	private final Map<Unit, NumericalStateWrapper> states;
+
+	/**
+	 * Summary of the method, or null if it was not summarized
+	 */
+	private final MethodSummary summary;
+
+	/**
+	 * 
+	 * @param states  state after each query, in the order of
+	 *                {@link #getQueries(ProgramIndex)}
+	 * @param summary summary of the method, or null if it was not summarized
+	 */
+	public QueryStates(Map<Unit, NumericalStateWrapper> states, MethodSummary summary) {
+		this.states = states;
+		this.summary = summary;
+	}
+
+	/**
+	 * 
+	 * @param analysis analysis of a method, after its fixpoint was reached
+	 * @param queries  queries of the method, see {@link #getQueries(ProgramIndex)}
+	 * @param summary  summary of the method, or null if it was not summarized
+	 * @return the states of analysis after queries
+	 */
+	public static QueryStates of(NumericalAnalysis analysis, List<Unit> queries, MethodSummary summary) {
+		return QueryStates.of(analysis, queries, null, summary);
+	}
+
+	/**
+	 * 
+	 * @param analysis  analysis of a method, after its fixpoint was reached
+	 * @param queries   queries of the method, see {@link #getQueries(ProgramIndex)}
+	 * @param variables variables each query references, see
+	 *                  {@link #getVariables(SootMethod, PointsToInitializer)}, or
+	 *                  null to keep all variables
+	 * @param summary   summary of the method, or null if it was not summarized
+	 * @return the states of analysis after queries, projected to variables
+	 */
+	public static QueryStates of(NumericalAnalysis analysis, List<Unit> queries, Map<Unit, Set<String>> variables,
+			MethodSummary summary) {
+		Map<Unit, NumericalStateWrapper> states = new LinkedHashMap<Unit, NumericalStateWrapper>();
+		for (Unit query : queries) {
+			NumericalStateWrapper state = analysis.getFallFlowAfter(query);
+			if (variables != null) {
+				state = state.project(variables.get(query));
+			}
+			states.put(query, state);
+		}
+		return new QueryStates(states, summary);
+	}
+
+	/**
+	 * 
+	 * @param index index of a method
+	 * @return statements of the method whose states the checks query, in program
+	 *         order of the Event constructor calls, followed by program order of
+	 *         the switchLights calls
+	 */
+	public static List<Unit> getQueries(ProgramIndex index) {
+		List<Unit> queries = new ArrayList<Unit>(index.getEventInitializations());
+		queries.addAll(index.getSwitchLightsCalls());
+		return queries;
+	}
+
+	/**
+	 * 
+	 * @param m        method
+	 * @param pointsTo the pointer analysis result for the class of m
+	 * @return for each query of m (see {@link #getQueries(ProgramIndex)}), the
+	 *         local variables the checks read from the state after it: the end
+	 *         of a created event, and the time of a switchLights call together
+	 *         with the ends of all events its receiver may point to
+	 */
+	public static Map<Unit, Set<String>> getVariables(SootMethod m, PointsToInitializer pointsTo) {
+		Map<Unit, Set<String>> variables = new HashMap<Unit, Set<String>>();
+		for (EventInitializer init : pointsTo.getInitializers(m)) {
+			Set<String> vars = variables.computeIfAbsent(init.getStatement(), k -> new HashSet<String>());
+			QueryStates.addLocal(vars, init.getStatement().getInvokeExpr().getArg(1));
+		}
+		ProgramIndex index = pointsTo.getIndex(m);
+		for (JVirtualInvokeExpr invoke : pointsTo.getVirtualInvokes(m)) {
+			JInvokeStmt stmt = index.getStatement(invoke);
+			if (stmt == null) {
+				continue;
+			}
+			Set<String> vars = variables.computeIfAbsent(stmt, k -> new HashSet<String>());
+			QueryStates.addLocal(vars, invoke.getArg(0));
+			if (invoke.getBase() instanceof Local) {
+				BitSet inits = pointsTo.getInitializerIds((Local) invoke.getBase());
+				for (int id = inits.nextSetBit(0); id >= 0; id = inits.nextSetBit(id + 1)) {
+					QueryStates.addLocal(vars, pointsTo.getInitializer(id).getStatement().getInvokeExpr().getArg(1));
+				}
+			}
+		}
+		for (Unit query : QueryStates.getQueries(index)) {
+			variables.putIfAbsent(query, new HashSet<String>());
+		}
+		return variables;
+	}
+
+	private static void addLocal(Set<String> vars, Value v) {
+		if (v instanceof Local) {
+			vars.add(((Local) v).getName());
+		}
+	}
+
+	/**
+	 * 
+	 * @param query statement returned by {@link #getQueries(ProgramIndex)}
+	 * @return the state after query, or null if query is not a query of this
+	 *         method
+	 */
+	public NumericalStateWrapper getFallFlowAfter(Unit query) {
+		return this.states.get(query);
+	}
+
+	/**
+	 * 
+	 * @return state after each query, in the order of
+	 *         {@link #getQueries(ProgramIndex)}
+	 */
+	public Map<Unit, NumericalStateWrapper> getStates() {
+		return Collections.unmodifiableMap(this.states);
+	}
+
+	/**
+	 * 
+	 * @return summary of the method, or null if it was not summarized
+	 */
+	public MethodSummary getSummary() {
+		return this.summary;
+	}
+}
@@ -0,0 +1,386 @@
+package ch.ethz.rse.verify;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.utils.Configuration;
+
+/**
+ * Verification results persisted across runs, keyed by the bytes of the
+ * verified class and of the classes it depends on, the property, and the
+ * analysis settings (see {@link #key(ClassToVerify, VerificationProperty)}).
+ *
+ * Results are appended to a log of fixed-size records, which is the source of
+ * truth. A memory-mapped hash table indexes the log, and is rebuilt from it
+ * when it is missing or full. File locks make it safe to share a store between
+ * concurrent processes.
+ */
+public class ResultStore implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResultStore.class);
+
+	/**
+	 * Changing the layout of keys or files invalidates existing stores
+	 */
+	private static final int FORMAT = 1;
+
+	private static final int KEY_BYTES = 32;
+
+	/**
+	 * Log record: key, result
+	 */
+	private static final int RECORD_BYTES = KEY_BYTES + 1;
+
+	/**
+	 * Index slot: key, result (0 for an empty slot), padding
+	 */
+	private static final int SLOT_BYTES = KEY_BYTES + 8;
+
+	/**
+	 * Index header: number of slots, number of log records indexed
+	 */
+	private static final int HEADER_BYTES = 16;
+
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private static final byte UNSAFE = 1;
+
+	private static final byte SAFE = 2;
+
+	private final FileChannel log;
+
+	private final FileChannel index;
+
+	/**
+	 * Locked to access {@link #log} or {@link #index}
+	 */
+	private final FileChannel lock;
+
+	/**
+	 * Mapping of {@link #index}
+	 */
+	private MappedByteBuffer table;
+
+	/**
+	 * Number of slots in {@link #table}
+	 */
+	private int capacity;
+
+	/**
+	 *
+	 * @param directory directory holding the store, created if necessary
+	 */
+	public ResultStore(File directory) {
+		try {
+			Files.createDirectories(directory.toPath());
+			this.log = FileChannel.open(new File(directory, "results.log").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.index = FileChannel.open(new File(directory, "results.idx").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.lock = FileChannel.open(new File(directory, "results.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			try (FileLock l = this.lock.lock()) {
+				if (this.index.size() < HEADER_BYTES) {
+					this.rebuild(INITIAL_CAPACITY);
+				} else {
+					this.remap();
+				}
+				this.catchUp();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		logger.debug("Opened result store {} with {} results", directory, this.table.getLong(8));
+	}
+
+	/**
+	 *
+	 * @param directory directory holding the store, or the empty string
+	 * @return the store in directory, or null if directory is empty
+	 */
+	public static ResultStore open(String directory) {
+		if (directory.isEmpty()) {
+			return null;
+		}
+		return new ResultStore(new File(directory));
+	}
+
+	/**
+	 *
+	 * @param key key computed by {@link #key(ClassToVerify, VerificationProperty)}
+	 * @return the stored result, or null if there is none
+	 */
+	public synchronized VerificationResult lookup(byte[] key) {
+		try {
+			try (FileLock l = this.lock.lock(0, Long.MAX_VALUE, true)) {
+				this.remap();
+				int slot = this.probe(key);
+				if (slot >= 0 || this.log.size() / RECORD_BYTES == this.table.getLong(8)) {
+					return this.result(slot);
+				}
+			}
+			// another process appended results we have not indexed yet
+			try (FileLock l = this.lock.lock()) {
+				this.remap();
+				this.catchUp();
+				return this.result(this.probe(key));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param key    key computed by
+	 *               {@link #key(ClassToVerify, VerificationProperty)}
+	 * @param result result to store for key
+	 */
+	public synchronized void store(byte[] key, VerificationResult result) {
+		byte value = result.isSafe ? SAFE : UNSAFE;
+		try (FileLock l = this.lock.lock()) {
+			this.remap();
+			this.catchUp();
+			if (this.probe(key) >= 0) {
+				return;
+			}
+
+			long records = this.table.getLong(8);
+			// drop a partial record left by a crashed process
+			this.log.truncate(records * RECORD_BYTES);
+			ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+			record.put(key).put(value).flip();
+			long position = records * RECORD_BYTES;
+			while (record.hasRemaining()) {
+				position += this.log.write(record, position);
+			}
+
+			this.catchUp();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.log.close();
+		this.index.close();
+		this.lock.close();
+	}
+
+	private VerificationResult result(int slot) {
+		if (slot < 0) {
+			return null;
+		}
+		return new VerificationResult(this.table.get(this.offset(slot) + KEY_BYTES) == SAFE);
+	}
+
+	private int offset(int slot) {
+		return HEADER_BYTES + slot * SLOT_BYTES;
+	}
+
+	/**
+	 *
+	 * @return the slot holding key, or -(empty slot for key) - 1 if there is none
+	 */
+	private int probe(byte[] key) {
+		int mask = this.capacity - 1;
+		// keys are hashes, so their first bytes are uniformly distributed
+		int slot = ByteBuffer.wrap(key).getInt() & mask;
+		while (true) {
+			int offset = this.offset(slot);
+			if (this.table.get(offset + KEY_BYTES) == 0) {
+				return -slot - 1;
+			}
+			boolean equal = true;
+			for (int i = 0; i < KEY_BYTES && equal; i++) {
+				equal = this.table.get(offset + i) == key[i];
+			}
+			if (equal) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Maps {@link #index} again if another process resized it. Requires holding
+	 * {@link #lock}.
+	 */
+	private void remap() throws IOException {
+		if (this.table != null && this.table.getLong(0) == this.capacity) {
+			return;
+		}
+		MappedByteBuffer header = this.index.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+		this.capacity = (int) header.getLong(0);
+		this.table = this.index.map(FileChannel.MapMode.READ_WRITE, 0, this.offset(this.capacity));
+	}
+
+	/**
+	 * Empties the index, resizing it to the given number of slots. Requires
+	 * holding {@link #lock} exclusively.
+	 */
+	private void rebuild(int capacity) throws IOException {
+		this.capacity = capacity;
+		this.table = this.index.map(FileChannel.MapMode.READ_WRITE, 0, this.offset(capacity));
+		for (int i = 0; i < this.offset(capacity); i += 8) {
+			this.table.putLong(i, 0);
+		}
+		this.table.putLong(0, capacity);
+	}
+
+	/**
+	 * Indexes all complete records of {@link #log}. Requires holding
+	 * {@link #lock} exclusively.
+	 */
+	private void catchUp() throws IOException {
+		long records = this.log.size() / RECORD_BYTES;
+		long indexed = this.table.getLong(8);
+		if (records == indexed) {
+			return;
+		}
+		if (records * 2 > this.capacity) {
+			// keep the load factor below 1/2
+			int capacity = this.capacity;
+			while (records * 2 > capacity) {
+				capacity *= 2;
+			}
+			this.rebuild(capacity);
+			indexed = 0;
+		}
+
+		ByteBuffer chunk = ByteBuffer.allocate(1024 * RECORD_BYTES);
+		byte[] key = new byte[KEY_BYTES];
+		long position = indexed * RECORD_BYTES;
+		while (indexed < records) {
+			chunk.clear();
+			chunk.limit((int) Math.min(chunk.capacity(), (records - indexed) * RECORD_BYTES));
+			while (chunk.hasRemaining()) {
+				position += this.log.read(chunk, position);
+			}
+			chunk.flip();
+			while (chunk.hasRemaining()) {
+				chunk.get(key);
+				byte value = chunk.get();
+				int slot = this.probe(key);
+				if (slot < 0) {
+					int offset = this.offset(-slot - 1);
+					for (int i = 0; i < KEY_BYTES; i++) {
+						this.table.put(offset + i, key[i]);
+					}
+					this.table.put(offset + KEY_BYTES, value);
+				}
+				indexed++;
+			}
+		}
+		this.table.putLong(8, indexed);
+	}
+
+	// KEYS
+
+	/**
+	 *
+	 * @param tc       class to verify
+	 * @param property property to verify
+	 * @return key of the result of verifying property on tc, which changes if tc,
+	 *         any class on its class path it (transitively) references, the
+	 *         analysis settings, or the analysis itself change
+	 */
+	public static byte[] key(ClassToVerify tc, VerificationProperty property) {
+		MessageDigest digest = ResultStore.sha256();
+		ResultStore.update(digest, "format=" + FORMAT);
+		ResultStore.update(digest, "property=" + property);
+		ResultStore.update(digest, Configuration.props.getAnalysisSettings());
+		digest.update(ResultStore.getAnalysisDigest());
+
+		for (Map.Entry<String, byte[]> e : ClassDependencies.of(tc).getDigests().entrySet()) {
+			ResultStore.update(digest, e.getKey());
+			digest.update(e.getValue());
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Digest of the jar or classes directory containing the analysis, cached
+	 */
+	private static byte[] analysisDigest;
+
+	/**
+	 *
+	 * @return digest of the jar containing the analysis or, if the analysis runs
+	 *         from a classes directory, of the class files in it, or an empty
+	 *         array if the location of the analysis is unknown
+	 */
+	static synchronized byte[] getAnalysisDigest() {
+		if (analysisDigest == null) {
+			analysisDigest = new byte[0];
+			CodeSource source = ResultStore.class.getProtectionDomain().getCodeSource();
+			if (source != null) {
+				try {
+					File f = new File(source.getLocation().toURI());
+					if (f.isFile()) {
+						analysisDigest = ResultStore.sha256().digest(Files.readAllBytes(f.toPath()));
+					} else if (f.isDirectory()) {
+						analysisDigest = ResultStore.getClassFilesDigest(f.toPath());
+					}
+				} catch (URISyntaxException | IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		return analysisDigest;
+	}
+
+	/**
+	 *
+	 * @param directory classes directory
+	 * @return digest of the names and contents of all class files in directory
+	 *         (recursively), in lexicographic order of their names
+	 */
+	static byte[] getClassFilesDigest(Path directory) throws IOException {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(directory)) {
+			files = walk.filter(p -> p.toString().endsWith(".class") && Files.isRegularFile(p)).sorted()
+					.collect(Collectors.toList());
+		}
+		MessageDigest digest = ResultStore.sha256();
+		for (Path file : files) {
+			ResultStore.update(digest, directory.relativize(file).toString().replace(File.separatorChar, '/'));
+			digest.update(Files.readAllBytes(file));
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+}
@@ -0,0 +1,199 @@
+package ch.ethz.rse.verify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import apron.Environment;
+import apron.Manager;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.MethodSummary;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import ch.ethz.rse.utils.Configuration;
+import soot.SootMethod;
+import soot.Unit;
+
+/**
+ * {@link QueryStates} persisted across runs, one file per method, keyed by the
+ * Jimple body of the method, its environment, the summaries of its callees,
+ * the abstract domain, and the analysis settings (see
+ * {@link #key(SootMethod, AbstractDomain, Environment, String)}).
+ *
+ * Files are written to a temporary file first and then renamed, so concurrent
+ * processes never read partially written files.
+ */
+public class StateCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(StateCache.class);
+
+	/**
+	 * Changing the layout of keys or files invalidates existing caches
+	 */
+	private static final int FORMAT = 3;
+
+	/**
+	 * Directory holding the cached states
+	 */
+	private final File directory;
+
+	/**
+	 * Domains whose states could not be cached, to report each of them once
+	 */
+	private final Set<AbstractDomain> unserializable = ConcurrentHashMap.newKeySet();
+
+	/**
+	 *
+	 * @param directory directory holding the cached states, created if necessary
+	 */
+	public StateCache(File directory) {
+		try {
+			Files.createDirectories(directory.toPath());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 *
+	 * @param directory directory holding the cached states, or the empty string
+	 * @return the cache in directory, or null if directory is empty
+	 */
+	public static StateCache open(String directory) {
+		if (directory.isEmpty()) {
+			return null;
+		}
+		return new StateCache(new File(directory));
+	}
+
+	/**
+	 *
+	 * @param method  method to analyze
+	 * @param domain  domain to analyze method with
+	 * @param env     environment of the analysis of method
+	 * @param callees summaries of the methods called by method, or the empty
+	 *                string
+	 * @return key of the states of the analysis of method, which changes if the
+	 *         body of method, env, callees, domain, the analysis settings, or the
+	 *         analysis itself change
+	 */
+	public static String key(SootMethod method, AbstractDomain domain, Environment env, String callees) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		String[] parts = { "format=" + FORMAT, "domain=" + domain, Configuration.props.getAnalysisSettings(),
+				method.getSignature(), method.getActiveBody().toString(), env.toString(), callees };
+		for (String part : parts) {
+			digest.update(part.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		digest.update(ResultStore.getAnalysisDigest());
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private Path getFile(String key) {
+		return new File(this.directory, key + ".states").toPath();
+	}
+
+	/**
+	 *
+	 * @param key     key computed by
+	 *                {@link #key(SootMethod, AbstractDomain, Environment, String)}
+	 * @param queries queries of the method, see
+	 *                {@link QueryStates#getQueries(ch.ethz.rse.pointer.ProgramIndex)}
+	 * @param man     manager to create the states with
+	 * @return the cached states, or null if there are none
+	 */
+	public QueryStates load(String key, List<Unit> queries, Manager man) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.getFile(key))))) {
+			int size = in.readInt();
+			if (size != queries.size()) {
+				throw new RuntimeException("Cached " + size + " states for " + queries.size() + " queries");
+			}
+			Map<Unit, NumericalStateWrapper> states = new LinkedHashMap<Unit, NumericalStateWrapper>();
+			for (Unit query : queries) {
+				states.put(query, NumericalStateWrapper.read(man, in));
+			}
+			MethodSummary summary = null;
+			if (in.readBoolean()) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				summary = MethodSummary.fromBytes(bytes);
+			}
+			return new QueryStates(states, summary);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param key    key computed by
+	 *               {@link #key(SootMethod, AbstractDomain, Environment, String)}
+	 * @param domain domain the states were computed with
+	 * @param states states to cache for key, not cached if one of them cannot
+	 *               be serialized
+	 */
+	public void store(String key, AbstractDomain domain, QueryStates states) {
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(states.getStates().size());
+				for (NumericalStateWrapper state : states.getStates().values()) {
+					if (!state.write(out)) {
+						if (this.unserializable.add(domain)) {
+							logger.info("Not caching states of {}: cannot serialize {}", domain, state);
+						} else {
+							logger.debug("Not caching states {}", key);
+						}
+						return;
+					}
+				}
+				MethodSummary summary = states.getSummary();
+				out.writeBoolean(summary != null);
+				if (summary != null) {
+					byte[] bytes = summary.getBytes();
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+			Files.move(tmp, this.getFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (tmp != null) {
+				tmp.toFile().delete();
+			}
+		}
+	}
+}
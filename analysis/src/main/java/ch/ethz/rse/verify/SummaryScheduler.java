@@ -0,0 +1,261 @@
+package ch.ethz.rse.verify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import apron.Environment;
+import apron.Manager;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.MethodSummary;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+/**
+ * Analyzes methods bottom-up over the strongly connected components of the
+ * call graph (as computed by SPARK), so that the summaries of all callees are
+ * known when a method is analyzed. Every method is analyzed once, except for
+ * recursive components, which are re-analyzed until their summaries
+ * stabilize. Components that do not call each other are analyzed in
+ * parallel.
+ */
+public class SummaryScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(SummaryScheduler.class);
+
+	/**
+	 * Analysis of a single method
+	 */
+	public interface MethodAnalyzer {
+
+		/**
+		 *
+		 * @param method    method to analyze
+		 * @param summaries summaries of the methods method may call
+		 * @return the summary of method
+		 */
+		MethodSummary analyze(SootMethod method, Map<SootMethod, MethodSummary> summaries);
+	}
+
+	/**
+	 * Methods to analyze
+	 */
+	private final Set<SootMethod> methods;
+
+	/**
+	 * Callees of every method in {@link #methods}, restricted to
+	 * {@link #methods}
+	 */
+	private final Map<SootMethod, Set<SootMethod>> callees = new HashMap<SootMethod, Set<SootMethod>>();
+
+	/**
+	 * Strongly connected components of the call graph, callees first
+	 */
+	private final List<List<SootMethod>> components = new ArrayList<List<SootMethod>>();
+
+	/**
+	 * Summaries of all methods summarized so far
+	 */
+	private final Map<SootMethod, MethodSummary> summaries = new ConcurrentHashMap<SootMethod, MethodSummary>();
+
+	private final AbstractDomain domain;
+
+	private final MethodAnalyzer analyzer;
+
+	/**
+	 * Number of rounds of a recursive component before its summaries are widened
+	 */
+	private final int wideningDelay;
+
+	// state of Tarjan's algorithm
+	private final Map<SootMethod, Integer> dfn = new HashMap<SootMethod, Integer>();
+	private final Map<SootMethod, Integer> low = new HashMap<SootMethod, Integer>();
+	private final List<SootMethod> stack = new ArrayList<SootMethod>();
+	private final Set<SootMethod> onStack = new LinkedHashSet<SootMethod>();
+
+	/**
+	 *
+	 * @param methods       methods to analyze
+	 * @param domain        domain to analyze with
+	 * @param wideningDelay number of rounds of a recursive component before its
+	 *                      summaries are widened
+	 * @param analyzer      analysis of a single method
+	 */
+	public SummaryScheduler(List<SootMethod> methods, AbstractDomain domain, int wideningDelay, MethodAnalyzer analyzer) {
+		this.methods = new LinkedHashSet<SootMethod>(methods);
+		this.domain = domain;
+		this.wideningDelay = wideningDelay;
+		this.analyzer = analyzer;
+
+		CallGraph cg = Scene.v().getCallGraph();
+		for (SootMethod m : this.methods) {
+			Set<SootMethod> targets = new LinkedHashSet<SootMethod>();
+			for (Iterator<Edge> edges = cg.edgesOutOf(m); edges.hasNext();) {
+				SootMethod target = edges.next().tgt();
+				if (this.methods.contains(target)) {
+					targets.add(target);
+				}
+			}
+			this.callees.put(m, targets);
+		}
+
+		for (SootMethod m : this.methods) {
+			if (!this.dfn.containsKey(m)) {
+				this.visit(m);
+			}
+		}
+		logger.debug("{} methods form {} components", this.methods.size(), this.components.size());
+	}
+
+	/**
+	 * Tarjan's algorithm, emitting components callees first
+	 */
+	private void visit(SootMethod m) {
+		int index = this.dfn.size();
+		this.dfn.put(m, index);
+		this.low.put(m, index);
+		this.stack.add(m);
+		this.onStack.add(m);
+
+		for (SootMethod callee : this.callees.get(m)) {
+			if (!this.dfn.containsKey(callee)) {
+				this.visit(callee);
+				this.low.put(m, Math.min(this.low.get(m), this.low.get(callee)));
+			} else if (this.onStack.contains(callee)) {
+				this.low.put(m, Math.min(this.low.get(m), this.dfn.get(callee)));
+			}
+		}
+
+		if (this.low.get(m).equals(this.dfn.get(m))) {
+			List<SootMethod> component = new ArrayList<SootMethod>();
+			SootMethod member;
+			do {
+				member = this.stack.remove(this.stack.size() - 1);
+				this.onStack.remove(member);
+				component.add(member);
+			} while (member != m);
+			this.components.add(component);
+		}
+	}
+
+	/**
+	 *
+	 * @return strongly connected components of the call graph, callees first
+	 */
+	public List<List<SootMethod>> getComponents() {
+		return this.components;
+	}
+
+	/**
+	 * Analyze all methods, on the given number of threads
+	 *
+	 * @param threads number of threads (1: sequential)
+	 */
+	public void run(int threads) {
+		if (threads <= 1) {
+			for (List<SootMethod> component : this.components) {
+				this.analyzeComponent(component);
+			}
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// start every component once the components it calls are done
+			Map<SootMethod, CompletableFuture<Void>> done = new HashMap<SootMethod, CompletableFuture<Void>>();
+			List<CompletableFuture<Void>> all = new ArrayList<CompletableFuture<Void>>();
+			for (List<SootMethod> component : this.components) {
+				Set<SootMethod> members = new HashSet<SootMethod>(component);
+				Set<CompletableFuture<Void>> dependencies = new LinkedHashSet<CompletableFuture<Void>>();
+				for (SootMethod m : component) {
+					for (SootMethod callee : this.callees.get(m)) {
+						if (!members.contains(callee)) {
+							dependencies.add(done.get(callee));
+						}
+					}
+				}
+				CompletableFuture<Void> f = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[dependencies.size()]))
+						.thenRunAsync(() -> this.analyzeComponent(component), pool);
+				for (SootMethod m : component) {
+					done.put(m, f);
+				}
+				all.add(f);
+			}
+			CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()])).join();
+		} catch (CompletionException e) {
+			// propagate the original exception (e.g., for unhandled statements)
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void analyzeComponent(List<SootMethod> component) {
+		SootMethod first = component.get(0);
+		boolean recursive = component.size() > 1 || this.callees.get(first).contains(first);
+		if (!recursive) {
+			this.summaries.put(first, this.analyzer.analyze(first, this.summaries));
+			return;
+		}
+
+		// iterate from "never returns" until the summaries stabilize
+		Manager man = this.domain.createManager();
+		for (SootMethod m : component) {
+			Environment env = new Environment(EnvironmentGenerator.getSummaryVariables(m), new String[] {});
+			this.summaries.put(m, MethodSummary.bottom(man, env));
+		}
+		int round = 0;
+		boolean stable = false;
+		while (!stable) {
+			Map<SootMethod, MethodSummary> next = new HashMap<SootMethod, MethodSummary>();
+			for (SootMethod m : component) {
+				next.put(m, this.analyzer.analyze(m, this.summaries));
+			}
+
+			stable = true;
+			for (SootMethod m : component) {
+				NumericalStateWrapper old = this.summaries.get(m).instantiate(man, "");
+				NumericalStateWrapper update = next.get(m).instantiate(man, "");
+				if (update.isIncludedIn(old)) {
+					continue;
+				}
+				stable = false;
+				update.join(old);
+				if (round >= this.wideningDelay) {
+					old.widen(update);
+					update = old;
+				}
+				this.summaries.put(m, this.summarize(man, update, m));
+			}
+			round++;
+		}
+		logger.debug("Summaries of recursive methods {} stabilized after {} rounds", component, round);
+	}
+
+	private MethodSummary summarize(Manager man, NumericalStateWrapper state, SootMethod m) {
+		try {
+			return MethodSummary.of(state);
+		} catch (UnsupportedOperationException e) {
+			logger.debug("Cannot summarize {}: {}", m.getName(), e.getMessage());
+			return MethodSummary.top(man, state.get().getEnvironment());
+		}
+	}
+}
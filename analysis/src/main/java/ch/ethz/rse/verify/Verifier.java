@@ -1,10 +1,24 @@
 package ch.ethz.rse.verify;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,15 +34,20 @@ import apron.ApronException;
 import apron.Environment;
 import apron.Manager;
 import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.MethodSummary;
+import ch.ethz.rse.numerical.NativeBudget;
 import ch.ethz.rse.numerical.NumericalAnalysis;
 import ch.ethz.rse.numerical.NumericalStateWrapper;
+import ch.ethz.rse.numerical.QueryCone;
 import ch.ethz.rse.pointer.EventInitializer;
 import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.utils.Configuration;
 import ch.ethz.rse.utils.Constants;
 import polyglot.ast.Call;
 import soot.Local;
+import soot.Scene;
 import soot.SootClass;
-import soot.SootHelper;
 import soot.SootMethod;
 import soot.Unit;
 import soot.Value;
@@ -37,6 +56,7 @@ import soot.jimple.internal.JSpecialInvokeExpr;
 import soot.jimple.internal.JVirtualInvokeExpr;
 import soot.jimple.internal.JimpleLocal;
 import soot.jimple.IntConstant;
+import soot.jimple.toolkits.callgraph.Edge;
 import soot.toolkits.graph.UnitGraph;
 
 /**
@@ -58,51 +78,379 @@ public class Verifier extends AVerifier {
 	private final PointsToInitializer pointsTo;
 
 	/**
-	 * list of already analyzed properties
+	 * number of threads analyzing methods of {@link #c} (1: sequential)
 	 */
-	private Set<VerificationProperty> analyzedProperties;
+	private final int threads;
+
+	/**
+	 * states of methods analyzed in previous runs, or null if disabled
+	 */
+	private final StateCache stateCache = StateCache.open(Configuration.props.getStateCache());
+
+	/**
+	 * number of methods whose states were loaded from {@link #stateCache}, and
+	 * time spent loading them, in the current domain
+	 */
+	private final AtomicLong loadedMethods = new AtomicLong();
+
+	private final AtomicLong loadNanos = new AtomicLong();
+
+	/**
+	 * number of methods analyzed, and time spent analyzing them, in the current
+	 * domain
+	 */
+	private final AtomicLong analyzedMethods = new AtomicLong();
+
+	private final AtomicLong analyzeNanos = new AtomicLong();
+
+	/**
+	 * native memory held by the states of the analyses of {@link #c}
+	 */
+	private final NativeBudget budget = new NativeBudget();
+
+	/**
+	 * true once all methods of {@link #c} were found supported, see
+	 * {@link #validate()}
+	 */
+	private boolean validated = false;
 
 	/**
 	 * 
 	 * @param c class to verify
 	 */
 	public Verifier(SootClass c) {
+		this(c, Configuration.props.getAnalysisThreads());
+	}
+
+	/**
+	 * 
+	 * @param c       class to verify
+	 * @param threads number of threads analyzing methods of c in parallel
+	 */
+	public Verifier(SootClass c, int threads) {
+		this(c, threads, Configuration.props.getDomains());
+	}
+
+	/**
+	 * 
+	 * @param c       class to verify
+	 * @param threads number of threads analyzing methods of c in parallel
+	 * @param domains abstract domains to analyze with, from cheapest to most
+	 *                precise
+	 */
+	public Verifier(SootClass c, int threads, List<AbstractDomain> domains) {
+		super(c.getName(), domains);
 		logger.debug("Analyzing {}", c.getName());
 
 		this.c = c;
-		// initialize analyzedProperty set
-		this.analyzedProperties = new HashSet<VerificationProperty>();
+		this.threads = threads;
 
 		// pointer analysis
 		this.pointsTo = new PointsToInitializer(this.c);
 	}
 
-	protected void runNumericalAnalysis(VerificationProperty property) {
-		analyzedProperties.add(property);
-
-		// iterate over all methods of c
+	/**
+	 * 
+	 * @return all methods of {@link #c} with a body
+	 */
+	private Set<SootMethod> getConcreteMethods() {
+		Set<SootMethod> concrete = new LinkedHashSet<SootMethod>();
 		for (SootMethod m : c.getMethods()) {
 			if (m.isAbstract() || m.isNative() || m.isPhantom()) {
 				continue;
 			}
+			concrete.add(m);
+		}
+		return concrete;
+	}
+
+	/**
+	 * Reject {@link #c} if a statement of any of its methods is not supported,
+	 * even in methods no property needs to analyze
+	 */
+	@Override
+	protected void validate() {
+		if (this.validated) {
+			return;
+		}
+		for (SootMethod m : this.getConcreteMethods()) {
+			NumericalAnalysis.validate(m);
+		}
+		this.validated = true;
+	}
+
+	protected void runNumericalAnalysis(AbstractDomain domain) {
+		// collect all methods of c, the methods not analyzed must be supported
+		// as well
+		Set<SootMethod> concrete = this.getConcreteMethods();
+		this.validate();
+
+		boolean interprocedural = Configuration.props.getInterprocedural();
+		List<SootMethod> methods = this.getRelevantMethods(concrete, interprocedural);
+		logger.info("Avoided {} of {} fixpoints in {} (methods without Event relevance)", concrete.size() - methods.size(),
+				concrete.size(), this.c.getName());
+
+		long startDimensions = this.metrics.getCount("environment_dimensions");
+		long startVariables = this.metrics.getCount("integer_variables");
+		long startAnalyses = this.metrics.getCount("methods_analyzed");
+		this.loadedMethods.set(0);
+		this.loadNanos.set(0);
+		this.analyzedMethods.set(0);
+		this.analyzeNanos.set(0);
+
+		if (interprocedural) {
+			// analyze callees first, and pass their summaries to callers
+			SummaryScheduler scheduler = new SummaryScheduler(methods, domain, Configuration.props.getWideningDelay(),
+					(m, summaries) -> this.analyzeMethod(m, domain, summaries));
+			scheduler.run(this.threads);
+		} else if (this.threads <= 1 || methods.size() <= 1) {
+			for (SootMethod m : methods) {
+				this.analyzeMethod(m, domain, null);
+			}
+		} else {
+			// every analysis uses its own Apron manager, so they are independent
+			logger.debug("Analyzing {} methods on {} threads", methods.size(), this.threads);
+			ForkJoinPool pool = new ForkJoinPool(this.threads);
+			try {
+				List<CompletableFuture<Void>> all = new ArrayList<CompletableFuture<Void>>();
+				for (SootMethod m : methods) {
+					all.add(CompletableFuture.runAsync(() -> this.analyzeMethod(m, domain, null), pool));
+				}
+				CompletableFuture.allOf(all.toArray(new CompletableFuture[all.size()])).join();
+			} catch (CompletionException e) {
+				// propagate the original exception (e.g., for unhandled statements)
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		logger.info("Tracked {} of {} integer variables in {} analyses of methods of {}",
+				this.metrics.getCount("environment_dimensions") - startDimensions,
+				this.metrics.getCount("integer_variables") - startVariables,
+				this.metrics.getCount("methods_analyzed") - startAnalyses, this.c.getName());
+		if (this.stateCache != null) {
+			logger.info("Runtime: Loaded states of {} methods in {}ms, analyzed {} methods in {}ms", this.loadedMethods.get(),
+					this.loadNanos.get() / 1000000, this.analyzedMethods.get(), this.analyzeNanos.get() / 1000000);
+		}
+		logger.debug("Peak size of Apron states of {}: {} (budget: {})", this.c.getName(), this.budget.getPeak(),
+				this.budget.getLimit());
+	}
+
+	/**
+	 * 
+	 * @param methods         methods of {@link #c}
+	 * @param interprocedural true if calls are analyzed using summaries
+	 * @return the methods in methods whose states the checks query, because they
+	 *         create events or call switchLights, and, with summaries, all
+	 *         methods they transitively call (in the order of methods)
+	 */
+	private List<SootMethod> getRelevantMethods(Set<SootMethod> methods, boolean interprocedural) {
+		Set<SootMethod> relevant = new HashSet<SootMethod>();
+		Deque<SootMethod> worklist = new ArrayDeque<SootMethod>();
+		for (SootMethod m : methods) {
+			if (!this.pointsTo.getInitializers(m).isEmpty() || !this.pointsTo.getVirtualInvokes(m).isEmpty()) {
+				relevant.add(m);
+				worklist.add(m);
+			}
+		}
 
-			logger.debug("Analyzing method {}", m.getName());
+		// callees feed values into relevant methods through their summaries
+		while (interprocedural && !worklist.isEmpty()) {
+			SootMethod m = worklist.poll();
+			for (Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(m); edges.hasNext();) {
+				SootMethod callee = edges.next().tgt();
+				if (methods.contains(callee) && relevant.add(callee)) {
+					worklist.add(callee);
+				}
+			}
+		}
 
-			// run numerical analysis
-			NumericalAnalysis analysis = new NumericalAnalysis(m, property, this.pointsTo);
-			this.numericalAnalysis.put(m, analysis);
+		List<SootMethod> ret = new LinkedList<SootMethod>();
+		for (SootMethod m : methods) {
+			if (relevant.contains(m)) {
+				ret.add(m);
+			}
 		}
+		return ret;
 	}
 
+	/**
+	 * 
+	 * @param summaries summaries of the methods m may call, or null to analyze m
+	 *                  in isolation
+	 * @return the summary of m, or null if summaries is null
+	 */
+	private MethodSummary analyzeMethod(SootMethod m, AbstractDomain domain, Map<SootMethod, MethodSummary> summaries) {
+		List<Unit> queries = QueryStates.getQueries(this.pointsTo.getIndex(m));
+
+		// the key of cached states depends on the environment, which is reused by
+		// the analysis on a miss
+		QueryCone cone = null;
+		EnvironmentGenerator environment = null;
+		String key = null;
+		if (this.stateCache != null) {
+			long startTime = System.nanoTime();
+			Manager man = domain.createManager();
+			cone = NumericalAnalysis.getCone(m, this.pointsTo, summaries);
+			environment = new EnvironmentGenerator(m, this.pointsTo, summaries != null, cone);
+			key = StateCache.key(m, domain, environment.getEnvironment(), Verifier.getCalleeSummaries(m, summaries));
+			QueryStates states = this.stateCache.load(key, queries, man);
+			long duration = System.nanoTime() - startTime;
+			if (states != null) {
+				logger.debug("Runtime: Loaded states of {} with {} in {}ms", m.getName(), domain, duration / 1000000);
+				this.loadedMethods.incrementAndGet();
+				this.loadNanos.addAndGet(duration);
+				this.metrics.addTime("load_states", duration);
+				this.metrics.add("methods_loaded", 1);
+				this.numericalAnalysis.put(m, states);
+				return states.getSummary();
+			}
+		}
+
+		logger.debug("Analyzing method {} with {}", m.getName(), domain);
+		long startTime = System.nanoTime();
+
+		// run numerical analysis, only the projected query states are needed after
+		// it is closed
+		QueryStates states;
+		if (environment == null) {
+			cone = NumericalAnalysis.getCone(m, this.pointsTo, summaries);
+		}
+		try (NumericalAnalysis analysis = new NumericalAnalysis(m, this.pointsTo, domain, summaries, this.budget, cone,
+				environment)) {
+			MethodSummary summary = summaries != null ? analysis.getSummary() : null;
+			states = QueryStates.of(analysis, queries, QueryStates.getVariables(m, this.pointsTo), summary);
+			// the query states stay charged to the budget as long as they are kept
+			analysis.retain(states.getStates().values());
+			this.recordMetrics(m, domain, analysis);
+		}
+		this.numericalAnalysis.put(m, states);
+
+		long duration = System.nanoTime() - startTime;
+		this.analyzedMethods.incrementAndGet();
+		this.analyzeNanos.addAndGet(duration);
+
+		if (this.stateCache != null) {
+			logger.debug("Runtime: Analyzed {} with {} in {}ms", m.getName(), domain, duration / 1000000);
+			this.stateCache.store(key, domain, states);
+		}
+		return states.getSummary();
+	}
+
+	/**
+	 * Add the timers and counters of analysis of m to {@link #metrics}
+	 */
+	private void recordMetrics(SootMethod m, AbstractDomain domain, NumericalAnalysis analysis) {
+		int dimensions = analysis.env.getVars().length;
+		this.metrics.addTime("environment", analysis.getEnvironmentNanos());
+		this.metrics.addTime("fixpoint", analysis.getFixpointNanos());
+		this.metrics.add("methods_analyzed", 1);
+		this.metrics.add("units", analysis.getUnitCount());
+		this.metrics.add("environment_dimensions", dimensions);
+		this.metrics.add("integer_variables", analysis.getVariableCount());
+		this.metrics.add("flow_through", analysis.getFlowThroughCount());
+		this.metrics.add("merge", analysis.getMergeCount());
+		this.metrics.add("widening", analysis.getWideningCount());
+		this.metrics.add("native_state_size", analysis.getStateSize());
+		this.metrics.add("native_elements", analysis.getElementCount());
+		long objects = 0;
+		for (long count : analysis.getNativeObjects().values()) {
+			objects += count;
+		}
+		this.metrics.add("native_objects", objects);
+
+		Map<String, Object> method = new LinkedHashMap<String, Object>();
+		method.put("method", m.getSignature());
+		method.put("domain", domain.toString());
+		method.put("units", analysis.getUnitCount());
+		method.put("environmentDimensions", dimensions);
+		method.put("flowThrough", analysis.getFlowThroughCount());
+		method.put("merge", analysis.getMergeCount());
+		method.put("widening", analysis.getWideningCount());
+		method.put("nativeStateSize", analysis.getStateSize());
+		method.put("nativeElements", analysis.getElementCount());
+		method.put("nativeObjects", objects);
+		method.put("fixpointMilliseconds", analysis.getFixpointNanos() / 1e6);
+		this.metrics.addMethod(method);
+	}
+
+	/**
+	 * 
+	 * @return the summaries of all methods m may call, as a string (empty if
+	 *         summaries is null)
+	 */
+	private static String getCalleeSummaries(SootMethod m, Map<SootMethod, MethodSummary> summaries) {
+		if (summaries == null) {
+			return "";
+		}
+		Map<String, MethodSummary> callees = new TreeMap<String, MethodSummary>();
+		for (Iterator<Edge> edges = Scene.v().getCallGraph().edgesOutOf(m); edges.hasNext();) {
+			SootMethod callee = edges.next().tgt();
+			callees.put(callee.getSignature(), summaries.get(callee));
+		}
+		StringBuilder ret = new StringBuilder();
+		for (Map.Entry<String, MethodSummary> e : callees.entrySet()) {
+			ret.append(e.getKey()).append('=');
+			ret.append(e.getValue() == null ? "unknown" : Base64.getEncoder().encodeToString(e.getValue().getBytes()));
+			ret.append(';');
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Decides property if all of its sites in {@link #c} have constant arguments
+	 * that satisfy it. Constant violations are left to the numerical analysis,
+	 * which may find them unreachable.
+	 */
 	@Override
-	public boolean checkStartEndOrder() {
-		if (!analyzedProperties.contains(VerificationProperty.START_END_ORDER)) {
-			return false;
+	protected Boolean decideConstant(VerificationProperty property) {
+		for (SootMethod m : this.c.getMethods()) {
+			if (property == VerificationProperty.START_END_ORDER) {
+				for (EventInitializer init : this.pointsTo.getInitializers(m)) {
+					Value end = init.getStatement().getInvokeExpr().getArg(1);
+					if (!(end instanceof IntConstant) || init.start > ((IntConstant) end).value) {
+						return null;
+					}
+				}
+				continue;
+			}
+
+			for (JVirtualInvokeExpr invoke : this.pointsTo.getVirtualInvokes(m)) {
+				Value base = invoke.getBase();
+				Value time = invoke.getArg(0);
+				if (!(base instanceof Local) || !(time instanceof IntConstant)) {
+					return null;
+				}
+				int t = ((IntConstant) time).value;
+
+				BitSet inits = this.pointsTo.getInitializerIds((Local) base);
+				for (int id = inits.nextSetBit(0); id >= 0; id = inits.nextSetBit(id + 1)) {
+					EventInitializer init = this.pointsTo.getInitializer(id);
+					if (property == VerificationProperty.AFTER_START) {
+						if (init.start > t) {
+							return null;
+						}
+						continue;
+					}
+					Value end = init.getStatement().getInvokeExpr().getArg(1);
+					if (!(end instanceof IntConstant) || t > ((IntConstant) end).value) {
+						return null;
+					}
+				}
+			}
 		}
+		return true;
+	}
 
+	@Override
+	public boolean checkStartEndOrder() {
 		// iterate over all analyzed methods
 		for (SootMethod m : this.numericalAnalysis.keySet()) {
-			NumericalAnalysis analysis = this.numericalAnalysis.get(m);
+			QueryStates analysis = this.numericalAnalysis.get(m);
 
 			for (EventInitializer init : pointsTo.getInitializers(m)) {
 				NumericalStateWrapper afterFlow = analysis.getFallFlowAfter(init.getStatement());
@@ -121,12 +469,8 @@ public class Verifier extends AVerifier {
 
 	@Override
 	public boolean checkAfterStart() {
-		if (!analyzedProperties.contains(VerificationProperty.AFTER_START)) {
-			return false;
-		}
-
 		for (SootMethod m : this.numericalAnalysis.keySet()) {
-			NumericalAnalysis analysis = this.numericalAnalysis.get(m);
+			QueryStates analysis = this.numericalAnalysis.get(m);
 
 			for (JVirtualInvokeExpr invoke : pointsTo.getVirtualInvokes(m)) {
 				Value base = invoke.getBase();
@@ -135,40 +479,20 @@ public class Verifier extends AVerifier {
 				}
 
 				Local baseLocal = (Local) base;
-				List <EventInitializer> inits = pointsTo.pointsTo(baseLocal);
+				BitSet inits = pointsTo.getInitializerIds(baseLocal);
 				Value time = invoke.getArg(0);
-				NumericalStateWrapper afterFlow = null;
-
-				for (Unit u : m.getActiveBody().getUnits()) {
-					if (!(u instanceof JInvokeStmt)) {
-						continue;
-					}
-
-					JInvokeStmt invokeStmt = (JInvokeStmt) u;
-					Value v = invokeStmt.getInvokeExpr();
-					if (!(v instanceof JVirtualInvokeExpr)) {
-						continue;
-					}
-					// it is a call to an object
-					JVirtualInvokeExpr virtualInvokeExpr = (JVirtualInvokeExpr) v;
-
-					if (!(virtualInvokeExpr.equals(invoke))) {
-						continue;
-					}
-
-					afterFlow = analysis.getFallFlowAfter(u);
-					break;
-				}
+				NumericalStateWrapper afterFlow = this.getFallFlowAfter(m, analysis, invoke);
 
 				if (afterFlow == null) {
 					logger.debug("Could not find after flow for {}", invoke);
 					return false;
 				}
 
-				for (EventInitializer init : inits) {
+				for (int id = inits.nextSetBit(0); id >= 0; id = inits.nextSetBit(id + 1)) {
+					EventInitializer init = pointsTo.getInitializer(id);
 					if (!(intValueDifference(init.start, time, afterFlow))) {
-						logger.debug(init.start + " " + time.toString() + " " + afterFlow.toString());
-						logger.debug(invoke.toString() + " failed!!");
+						logger.debug("{} {} {}", init.start, time, afterFlow);
+						logger.debug("{} failed!!", invoke);
 						return false;
 					}
 				}
@@ -180,12 +504,8 @@ public class Verifier extends AVerifier {
 
 	@Override
 	public boolean checkBeforeEnd() {
-		if (!analyzedProperties.contains(VerificationProperty.BEFORE_END)) {
-			return false;
-		}
-
 		for (SootMethod m : this.numericalAnalysis.keySet()) {
-			NumericalAnalysis analysis = this.numericalAnalysis.get(m);
+			QueryStates analysis = this.numericalAnalysis.get(m);
 
 			for (JVirtualInvokeExpr invoke : pointsTo.getVirtualInvokes(m)) {
 				Value base = invoke.getBase();
@@ -194,38 +514,18 @@ public class Verifier extends AVerifier {
 				}
 
 				Local baseLocal = (Local) base;
-				List <EventInitializer> inits = pointsTo.pointsTo(baseLocal);
+				BitSet inits = pointsTo.getInitializerIds(baseLocal);
 				Value time = invoke.getArg(0);
 
-				NumericalStateWrapper afterFlow = null;
-
-				for (Unit u : m.getActiveBody().getUnits()) {
-					if (!(u instanceof JInvokeStmt)) {
-						continue;
-					}
-
-					JInvokeStmt invokeStmt = (JInvokeStmt) u;
-					Value v = invokeStmt.getInvokeExpr();
-					if (!(v instanceof JVirtualInvokeExpr)) {
-						continue;
-					}
-					// it is a call to an object
-					JVirtualInvokeExpr virtualInvokeExpr = (JVirtualInvokeExpr) v;
-
-					if (!(virtualInvokeExpr.equals(invoke))) {
-						continue;
-					}
-
-					afterFlow = analysis.getFallFlowAfter(u);
-					break;
-				}
+				NumericalStateWrapper afterFlow = this.getFallFlowAfter(m, analysis, invoke);
 
 				if (afterFlow == null) {
 					logger.debug("Could not find after flow for {}", invoke);
 					return false;
 				}
 
-				for (EventInitializer init : inits) {
+				for (int id = inits.nextSetBit(0); id >= 0; id = inits.nextSetBit(id + 1)) {
+					EventInitializer init = pointsTo.getInitializer(id);
 					Abstract1 abstr = afterFlow.get();
 					Environment env = abstr.getEnvironment();
 					Manager man = abstr.getCreationManager();
@@ -255,15 +555,15 @@ public class Verifier extends AVerifier {
 
 					// end - time
 					Texpr1Node endMinusTime = new Texpr1BinNode(Texpr1BinNode.OP_SUB, Texpr1BinNode.RTYPE_INT, Texpr1BinNode.RDIR_ZERO, endNode, timeNode);
-					logger.debug(endMinusTime.toString());
+					logger.debug("{}", endMinusTime);
 					
 					// 0 <= end - time
 					Tcons1 constraint = new Tcons1(env, Tcons1.SUPEQ, endMinusTime);
-					logger.debug(constraint.toString());
+					logger.debug("{}", constraint);
 
 					try {
 						if (!abstr.satisfy(man, constraint)) {
-							logger.debug(invoke.toString() + " failed!!");
+							logger.debug("{} failed!!", invoke);
 							return false;
 						}
 					} catch (ApronException e) {
@@ -277,11 +577,25 @@ public class Verifier extends AVerifier {
 		return true;
 	}
 
+	/**
+	 * 
+	 * @return the state after the statement performing invoke in m, or null if
+	 *         there is no such statement
+	 */
+	private NumericalStateWrapper getFallFlowAfter(SootMethod m, QueryStates analysis, JVirtualInvokeExpr invoke) {
+		JInvokeStmt invokeStmt = this.pointsTo.getIndex(m).getStatement(invoke);
+		if (invokeStmt == null) {
+			return null;
+		}
+		return analysis.getFallFlowAfter(invokeStmt);
+	}
+
 	private boolean intValueDifference(int a, Value b, NumericalStateWrapper state) {
 		if (b instanceof IntConstant) {
 			int bInt = ((IntConstant) b).value;
 
-			return a <= bInt;
+			// a violation only matters if it is reachable
+			return a <= bInt || state.isBottom();
 		} else if (b instanceof JimpleLocal) {
 			Abstract1 abstr = state.get();
 			Environment env = abstr.getEnvironment();
@@ -1,9 +1,20 @@
 package soot;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.ethz.rse.utils.Configuration;
+import ch.ethz.rse.verify.ClassDependencies;
 import ch.ethz.rse.verify.ClassToVerify;
 import soot.options.Options;
 import soot.toolkits.graph.BriefUnitGraph;
@@ -17,12 +28,40 @@ public class SootHelper {
 
 	private static final Logger logger = LoggerFactory.getLogger(SootHelper.class);
 
+	/**
+	 * Class path the warm scene was set up for, or null if the scene was reset
+	 * since (see {@link #loadClassWarm(ClassToVerify)})
+	 */
+	private static String warmClassPath = null;
+
+	/**
+	 * Digest of the class files loaded into the warm scene, keyed by internal
+	 * class name (see {@link ClassDependencies})
+	 */
+	private static final Map<String, byte[]> warmClasses = new HashMap<String, byte[]>();
+
 	public static SootClass loadClassAndAnalyze(ClassToVerify c) {
 		SootClass sc = SootHelper.loadClass(c);
 		SootHelper.runPointsToAnalysis();
 		return sc;
 	}
 
+	/**
+	 * Like {@link #loadClassAndAnalyze(ClassToVerify)}, but keeps the Soot scene
+	 * (including the JDK library classes) alive between calls. Only the first
+	 * call for a class path resets Soot, later calls only (re-)load the
+	 * application classes c depends on whose class file changed, together with
+	 * the classes referencing them, and rerun SPARK.
+	 * 
+	 * @param c the class to test
+	 * @return the Soot representation of c
+	 */
+	public static synchronized SootClass loadClassAndAnalyzeWarm(ClassToVerify c) {
+		SootClass sc = SootHelper.loadClassWarm(c);
+		SootHelper.runPointsToAnalysisWarm();
+		return sc;
+	}
+
 	/**
 	 * Load the referenced class and all related classes
 	 * 
@@ -41,17 +80,132 @@ public class SootHelper {
 		return sc;
 	}
 
+	/**
+	 * Load the referenced class into the warm scene, resetting Soot only if the
+	 * scene was not yet set up for the class path of c
+	 * 
+	 * @param c the class to test
+	 * @return the Soot representation of c
+	 */
+	public static synchronized SootClass loadClassWarm(ClassToVerify c) {
+		long startTime = System.nanoTime();
+
+		SootClass sc = SootHelper.loadClassWarmInternal(c);
+
+		long endTime = System.nanoTime();
+		long durationMilliseconds = (endTime - startTime) / 1000000;
+		logger.debug("Runtime: Loaded {} (warm) after {}ms", sc.name, durationMilliseconds);
+
+		return sc;
+	}
+
+	private static SootClass loadClassWarmInternal(ClassToVerify c) {
+		String classesDir = c.getClassPath().toString();
+		String classToAnalyze = c.getPackageName();
+		ClassDependencies dependencies = ClassDependencies.of(c);
+
+		if (!classesDir.equals(warmClassPath)) {
+			// cold start: load the JDK library classes once
+			SootClass sc = SootHelper.loadClassInternal(c);
+			warmClassPath = classesDir;
+			warmClasses.putAll(dependencies.getDigests());
+			return sc;
+		}
+
+		// application classes changed since they were loaded (or never loaded
+		// from their current class file)
+		Set<String> changed = new HashSet<String>();
+		for (Map.Entry<String, byte[]> e : dependencies.getDigests().entrySet()) {
+			if (!Arrays.equals(e.getValue(), warmClasses.get(e.getKey()))) {
+				changed.add(e.getKey());
+			}
+		}
+
+		Scene scene = Scene.v();
+		if (changed.isEmpty() && scene.containsClass(classToAnalyze)
+				&& scene.getSootClass(classToAnalyze).resolvingLevel() >= SootClass.BODIES) {
+			logger.info("Reusing {} from warm Soot scene", classToAnalyze);
+		} else {
+			// bodies of classes referencing a changed class refer to its old version
+			Set<String> stale = dependencies.getAffected(changed);
+			stale.add(classToAnalyze.replace('.', '/'));
+			logger.info("Loading {} of {} classes {} depends on into warm Soot scene ({} changed)", stale.size(),
+					dependencies.getDigests().size(), classToAnalyze, changed.size());
+			for (String name : stale) {
+				String className = ClassDependencies.toClassName(name);
+				if (scene.containsClass(className)) {
+					scene.removeClass(scene.getSootClass(className));
+				}
+			}
+			for (String name : stale) {
+				// the scene is done resolving, so we must force resolution
+				SootClass reloaded = scene.forceResolve(ClassDependencies.toClassName(name), SootClass.BODIES);
+				reloaded.setApplicationClass();
+				warmClasses.put(name, dependencies.getDigests().get(name));
+			}
+
+			// hierarchy may have changed
+			scene.releaseActiveHierarchy();
+			scene.releaseFastHierarchy();
+		}
+
+		SootClass sc = scene.getSootClass(classToAnalyze);
+		scene.setEntryPoints(sc.getMethods());
+
+		for (SootMethod method : sc.getMethods()) {
+			method.retrieveActiveBody();
+		}
+
+		return sc;
+	}
+
+	/**
+	 * Load several classes into a single Soot scene, and run points-to analysis
+	 * on all of them at once
+	 * 
+	 * @param cs the classes to test
+	 * @return the Soot representations of cs, in the same order, with null for
+	 *         each class that could not be loaded (the error is logged)
+	 */
+	public static List<SootClass> loadClassesAndAnalyze(List<ClassToVerify> cs) {
+		long startTime = System.nanoTime();
+
+		List<SootClass> scs = SootHelper.loadClassesInternal(cs, true);
+
+		long endTime = System.nanoTime();
+		long durationMilliseconds = (endTime - startTime) / 1000000;
+		logger.debug("Runtime: Loaded {} classes after {}ms", cs.size(), durationMilliseconds);
+
+		SootHelper.runPointsToAnalysis();
+		return scs;
+	}
+
 	private static SootClass loadClassInternal(ClassToVerify c) {
+		return SootHelper.loadClassesInternal(Collections.singletonList(c), false).get(0);
+	}
+
+	/**
+	 * 
+	 * @param cs           the classes to test
+	 * @param skipFailures if true, a class that cannot be loaded is logged and
+	 *                     represented by null, instead of aborting
+	 * @return the Soot representations of cs, in the same order
+	 */
+	private static List<SootClass> loadClassesInternal(List<ClassToVerify> cs, boolean skipFailures) {
 		// sometimes, the wrong java version leads to weird behavior (bugs or
 		// performance issues)
 		logger.info("Using Java version {}", System.getProperty("java.version"));
 
-		String classesDir = c.getClassPath().toString();
-		String classToAnalyze = c.getPackageName();
+		Set<String> classesDirs = new LinkedHashSet<String>();
+		for (ClassToVerify c : cs) {
+			classesDirs.add(c.getClassPath().toString());
+		}
 
 		// reset previously loaded classes (important for consecutive analysis)
 		logger.info("Resetting Soot.");
 		G.reset();
+		warmClassPath = null;
+		warmClasses.clear();
 
 		// Helpful resources for creating this code:
 		// https://github.com/Sable/heros/wiki/Example:-Using-Heros-with-Soot
@@ -65,9 +219,9 @@ public class SootHelper {
 		}
 		String rt = javaHome + "/jre/lib/rt.jar";
 		String jce = javaHome + "/jre/lib/jce.jar";
-		String classpath = classesDir + ":" + rt + ":" + jce;
+		String classpath = String.join(":", classesDirs) + ":" + rt + ":" + jce;
 		// set classpath
-		logger.debug("Soot classpath:" + classpath);
+		logger.debug("Soot classpath:{}", classpath);
 		Scene.v().setSootClassPath(classpath);
 
 		// Enable whole-program mode
@@ -81,27 +235,61 @@ public class SootHelper {
 		// exclude Java library
 		Options.v().set_no_bodies_for_excluded(true);
 
-		// produce more detailed output (helpful for debugging purposes)
-		Options.v().set_verbose(true);
+		// produce more detailed output (helpful for debugging purposes), unless
+		// it would be discarded anyway
+		Options.v().set_verbose(SootHelper.isVerbose());
 
-		// load the class
-		logger.info("Loading {} into Soot", classToAnalyze);
-		SootClass sc = Scene.v().loadClass(classToAnalyze, SootClass.BODIES);
-		sc.setApplicationClass();
+		// load the classes
+		List<SootClass> scs = new ArrayList<SootClass>();
+		for (ClassToVerify c : cs) {
+			logger.info("Loading {} into Soot", c.getPackageName());
+			try {
+				SootClass sc = Scene.v().loadClass(c.getPackageName(), SootClass.BODIES);
+				sc.setApplicationClass();
+				scs.add(sc);
+			} catch (RuntimeException e) {
+				if (!skipFailures) {
+					throw e;
+				}
+				logger.error("Error loading {}: {}", c.getPackageName(), e);
+				scs.add(null);
+			}
+		}
 
 		Scene.v().loadNecessaryClasses();
 
-		Scene.v().setEntryPoints(sc.getMethods());
-
-		for (SootMethod method : sc.getMethods()) {
-			method.retrieveActiveBody();
-			logger.debug("Loaded method {} with body:\n{}", method.toString(), method.getActiveBody());
+		for (int i = 0; i < scs.size(); i++) {
+			SootClass sc = scs.get(i);
+			if (sc == null) {
+				continue;
+			}
+			try {
+				for (SootMethod method : sc.getMethods()) {
+					method.retrieveActiveBody();
+					logger.debug("Loaded method {} with body:\n{}", method.toString(), method.getActiveBody());
+				}
+			} catch (RuntimeException e) {
+				if (!skipFailures) {
+					throw e;
+				}
+				logger.error("Error loading {}: {}", sc.getName(), e);
+				scs.set(i, null);
+				continue;
+			}
+			for (SootField field : sc.getFields()) {
+				logger.debug("Loaded field {}", field.toString());
+			}
 		}
-		for (SootField field : sc.getFields()) {
-			logger.debug("Loaded field {}", field.toString());
+
+		List<SootMethod> entryPoints = new ArrayList<SootMethod>();
+		for (SootClass sc : scs) {
+			if (sc != null) {
+				entryPoints.addAll(sc.getMethods());
+			}
 		}
+		Scene.v().setEntryPoints(entryPoints);
 
-		return sc;
+		return scs;
 	}
 
 	public static void runPointsToAnalysis() {
@@ -114,14 +302,44 @@ public class SootHelper {
 		logger.debug("Runtime: Ran points-to analysis in {}ms", durationMilliseconds);
 	}
 
+	/**
+	 * Rerun SPARK on the warm scene, discarding results of previous runs
+	 */
+	public static synchronized void runPointsToAnalysisWarm() {
+		long startTime = System.nanoTime();
+
+		Scene.v().releaseCallGraph();
+		Scene.v().releasePointsToAnalysis();
+		Scene.v().releaseReachableMethods();
+
+		// only the call-graph pack is needed to obtain a fresh SPARK result
+		SootHelper.setPointsToOptions();
+		logger.info("Running call-graph construction (warm)");
+		PackManager.v().getPack("cg").apply();
+		logger.info("Finished call-graph construction (warm)");
+
+		long endTime = System.nanoTime();
+		long durationMilliseconds = (endTime - startTime) / 1000000;
+		logger.debug("Runtime: Ran points-to analysis (warm) in {}ms", durationMilliseconds);
+	}
+
 	private static void runPointsToAnalysisInternal() {
+		SootHelper.setPointsToOptions();
+
+		// run SPARK call-graph construction
+		logger.info("Running call-graph construction");
+		PackManager.v().runPacks();
+		logger.info("Finished call-graph construction");
+	}
+
+	private static void setPointsToOptions() {
 		// Enable SPARK call-graph construction
 		// Documentation of options:
 		// https://soot-build.cs.uni-paderborn.de/public/origin/master/soot/soot-master/3.0.0/options/soot_options.htm#phase_5_2
 		Options.v().setPhaseOption("cg", "on");
 		Options.v().setPhaseOption("cg.spark", "on");
 		Options.v().setPhaseOption("cg.spark", "enabled:true");
-		Options.v().setPhaseOption("cg.spark", "verbose:true");
+		Options.v().setPhaseOption("cg.spark", "verbose:" + SootHelper.isVerbose());
 		Options.v().setPhaseOption("cg.spark", "on-fly-cg:true");
 		// only consider application classes when building the callgraph. The
 		// resulting callgraph will be inherently unsound. Still, this option
@@ -131,11 +349,15 @@ public class SootHelper {
 		// SPARK requires jimple format
 		// Helpful source: https://github.com/Sable/soot/issues/332
 		Options.v().set_output_format(Options.output_format_jimple);
+	}
 
-		// run SPARK call-graph construction
-		logger.info("Running call-graph construction");
-		PackManager.v().runPacks();
-		logger.info("Finished call-graph construction");
+	/**
+	 * 
+	 * @return true if Soot should report details of its phases, i.e., if its
+	 *         debug output is logged (see logback.xml)
+	 */
+	private static boolean isVerbose() {
+		return LoggerFactory.getLogger("soot").isDebugEnabled();
 	}
 
 	public static boolean isIntValue(Value val) {
@@ -145,9 +367,12 @@ public class SootHelper {
 				|| val.getType().toString().equals("byte");
 	}
 
-	public final static UnitGraph getUnitGraph(SootMethod method) {
+	/**
+	 * Synchronized, because printing the body uses Soot's global state
+	 */
+	public final static synchronized UnitGraph getUnitGraph(SootMethod method) {
 		Body b = method.retrieveActiveBody();
-		logger.debug("Analysing:\n" + b);
+		logger.debug("Analysing:\n{}", b);
 		UnitGraph g = new BriefUnitGraph(b);
 		return g;
 	}
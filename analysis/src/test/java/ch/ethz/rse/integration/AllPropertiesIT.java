@@ -0,0 +1,56 @@
+package ch.ethz.rse.integration;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.main.Runner;
+import ch.ethz.rse.testing.VerificationTestCase;
+import ch.ethz.rse.testing.VerificationTestCaseCollector;
+
+/**
+ * Test checking all properties of an example at once
+ *
+ */
+public class AllPropertiesIT {
+
+	/**
+	 *
+	 * @return all available tasks, grouped by class
+	 */
+	public static Collection<Collection<VerificationTestCase>> getTests() throws IOException {
+		Multimap<String, VerificationTestCase> perClass = LinkedHashMultimap.create();
+		for (VerificationTestCase t : VerificationTestCaseCollector.getTests()) {
+			if (!t.isDisabled()) {
+				perClass.put(t.getTestClass().getPackageName(), t);
+			}
+		}
+		return perClass.asMap().values();
+	}
+
+	@ParameterizedTest(name = "{index}: {0}")
+	@MethodSource("getTests")
+	void testExampleClass(Collection<VerificationTestCase> examples) {
+		EnumSet<VerificationProperty> properties = EnumSet.noneOf(VerificationProperty.class);
+		for (VerificationTestCase t : examples) {
+			properties.add(t.verificationProperty);
+		}
+
+		Map<VerificationProperty, VerificationResult> actual = Runner.verify(examples.iterator().next().getTestClass(), properties);
+
+		for (VerificationTestCase t : examples) {
+			Assertions.assertEquals(t.expected, actual.get(t.verificationProperty), t.toString());
+		}
+	}
+
+}
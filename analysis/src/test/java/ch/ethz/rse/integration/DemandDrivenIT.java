@@ -0,0 +1,61 @@
+package ch.ethz.rse.integration;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import ch.ethz.rse.testing.VerificationTestCase;
+import ch.ethz.rse.testing.VerificationTestCaseCollector;
+import ch.ethz.rse.utils.Configuration;
+
+/**
+ * Test the demand-driven analysis on all provided examples, which must yield
+ * the same results as the exhaustive analysis, and reject the same inputs
+ *
+ */
+public class DemandDrivenIT {
+
+	/**
+	 *
+	 * @return all available tasks
+	 */
+	public static List<VerificationTestCase> getTests() throws IOException {
+		return VerificationTestCaseCollector.getTests();
+	}
+
+	@BeforeEach
+	public void enable() {
+		Configuration.props.set("DEMAND_DRIVEN", "true");
+	}
+
+	@AfterEach
+	public void reset() {
+		Configuration.props.set("DEMAND_DRIVEN", "false");
+	}
+
+	@ParameterizedTest(name = "{index}: {0}")
+	@MethodSource("getTests")
+	void testExampleClass(VerificationTestCase example) {
+		SpecificExampleIT.testOnExample(example);
+	}
+
+	/**
+	 *
+	 * @return all unsupported inputs, which must be rejected as by the
+	 *         exhaustive analysis
+	 */
+	public static List<VerificationTestCase> getInvalidTests() throws IOException {
+		return AllExamplesErrorIT.getTests();
+	}
+
+	@ParameterizedTest(name = "{index}: {0}")
+	@MethodSource("getInvalidTests")
+	void testInvalidExampleClass(VerificationTestCase example) {
+		ErrorTest.testOnExample(example);
+	}
+
+}
@@ -0,0 +1,34 @@
+package ch.ethz.rse.integration.interprocedural;
+
+import ch.ethz.rse.Event;
+
+// expected results (with INTERPROCEDURAL=true):
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Call_Summary_Safe {
+
+	public static void m1(int j) {
+		Event e = new Event(2, 10);
+		e.switchLights(clamp(j));
+		if (j >= 0) {
+			Event f = new Event(3, add(j, 3));
+			f.switchLights(add(j, 3));
+		}
+	}
+
+	public static int clamp(int x) {
+		if (x < 2) {
+			return 2;
+		}
+		if (x > 10) {
+			return 10;
+		}
+		return x;
+	}
+
+	public static int add(int a, int b) {
+		return a + b;
+	}
+}
@@ -0,0 +1,348 @@
+package ch.ethz.rse.integration.scaling;
+
+import ch.ethz.rse.Event;
+
+// generated by ch.ethz.rse.testing.WorkloadGenerator: methods=8 loopDepth=2 events=4 aliasing=3 switchCalls=16 intVars=8
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Scaling_M_Safe {
+	public static void m0(int p) {
+		Event e0 = new Event(0, 21);
+		Event e1 = new Event(0, 29);
+		Event e2 = new Event(0, 24);
+		Event e3 = new Event(0, 27);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 0;
+				int v2 = v1 + 1;
+				int v3 = v2 + 1;
+				int v4 = v3 + 2;
+				int v5 = v4 + 2;
+				int v6 = v5 + 2;
+				int v7 = v6 + 2;
+				a.switchLights(v3);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v1);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v1);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e0.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m1(int p) {
+		Event e0 = new Event(0, 24);
+		Event e1 = new Event(0, 27);
+		Event e2 = new Event(0, 25);
+		Event e3 = new Event(1, 27);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 0;
+				int v2 = v1 + 2;
+				int v3 = v2 + 2;
+				int v4 = v3 + 2;
+				int v5 = v4 + 2;
+				int v6 = v5 + 2;
+				int v7 = v6 + 2;
+				a.switchLights(v7);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v4);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e3.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m2(int p) {
+		Event e0 = new Event(0, 26);
+		Event e1 = new Event(0, 26);
+		Event e2 = new Event(0, 25);
+		Event e3 = new Event(0, 26);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 1;
+				int v2 = v1 + 2;
+				int v3 = v2 + 0;
+				int v4 = v3 + 1;
+				int v5 = v4 + 2;
+				int v6 = v5 + 1;
+				int v7 = v6 + 1;
+				a.switchLights(v3);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e2.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m3(int p) {
+		Event e0 = new Event(0, 13);
+		Event e1 = new Event(0, 21);
+		Event e2 = new Event(0, 17);
+		Event e3 = new Event(1, 16);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 0;
+				int v2 = v1 + 0;
+				int v3 = v2 + 1;
+				int v4 = v3 + 1;
+				int v5 = v4 + 0;
+				int v6 = v5 + 1;
+				int v7 = v6 + 0;
+				a.switchLights(v6);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v1);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e0.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m4(int p) {
+		Event e0 = new Event(0, 16);
+		Event e1 = new Event(0, 16);
+		Event e2 = new Event(0, 19);
+		Event e3 = new Event(1, 20);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 1;
+				int v2 = v1 + 1;
+				int v3 = v2 + 1;
+				int v4 = v3 + 1;
+				int v5 = v4 + 0;
+				int v6 = v5 + 1;
+				int v7 = v6 + 0;
+				a.switchLights(v5);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v4);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e2.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m5(int p) {
+		Event e0 = new Event(0, 20);
+		Event e1 = new Event(0, 24);
+		Event e2 = new Event(0, 20);
+		Event e3 = new Event(1, 22);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 1;
+				int v2 = v1 + 2;
+				int v3 = v2 + 2;
+				int v4 = v3 + 2;
+				int v5 = v4 + 1;
+				int v6 = v5 + 1;
+				int v7 = v6 + 0;
+				a.switchLights(v7);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v4);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e0.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m6(int p) {
+		Event e0 = new Event(0, 26);
+		Event e1 = new Event(0, 26);
+		Event e2 = new Event(0, 18);
+		Event e3 = new Event(1, 18);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 2;
+				int v2 = v1 + 1;
+				int v3 = v2 + 0;
+				int v4 = v3 + 1;
+				int v5 = v4 + 2;
+				int v6 = v5 + 0;
+				int v7 = v6 + 1;
+				a.switchLights(v7);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v2);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v6);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v4);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v0);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e0.switchLights(v7 + 1);
+			}
+		}
+	}
+
+	public static void m7(int p) {
+		Event e0 = new Event(0, 25);
+		Event e1 = new Event(0, 25);
+		Event e2 = new Event(0, 17);
+		Event e3 = new Event(0, 23);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		if (p > 2) {
+			a = e2;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			for (int i1 = 0; i1 < 10; i1++) {
+				int v0 = i1;
+				int v1 = v0 + 2;
+				int v2 = v1 + 1;
+				int v3 = v2 + 0;
+				int v4 = v3 + 1;
+				int v5 = v4 + 1;
+				int v6 = v5 + 2;
+				int v7 = v6 + 0;
+				a.switchLights(v0);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e3.switchLights(v7 + 1);
+				a.switchLights(v5);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v4);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v1);
+				e2.switchLights(v7 + 1);
+				a.switchLights(v3);
+				e0.switchLights(v7 + 1);
+				a.switchLights(v7);
+				e1.switchLights(v7 + 1);
+				a.switchLights(v1);
+				e2.switchLights(v7 + 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package ch.ethz.rse.integration.scaling;
+
+import ch.ethz.rse.Event;
+
+// generated by ch.ethz.rse.testing.WorkloadGenerator: methods=2 loopDepth=1 events=2 aliasing=2 switchCalls=4 intVars=4
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Scaling_S_Safe {
+	public static void m0(int p) {
+		Event e0 = new Event(0, 19);
+		Event e1 = new Event(0, 17);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			int v0 = i0;
+			int v1 = v0 + 0;
+			int v2 = v1 + 1;
+			int v3 = v2 + 1;
+			a.switchLights(v1);
+			e1.switchLights(v3 + 1);
+			a.switchLights(v0);
+			e1.switchLights(v3 + 1);
+		}
+	}
+
+	public static void m1(int p) {
+		Event e0 = new Event(0, 19);
+		Event e1 = new Event(0, 18);
+		Event a = e0;
+		if (p > 1) {
+			a = e1;
+		}
+		for (int i0 = 0; i0 < 10; i0++) {
+			int v0 = i0;
+			int v1 = v0 + 2;
+			int v2 = v1 + 2;
+			int v3 = v2 + 2;
+			a.switchLights(v3);
+			e1.switchLights(v3 + 1);
+			a.switchLights(v3);
+			e0.switchLights(v3 + 1);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package ch.ethz.rse.integration.tests;
+
+import ch.ethz.rse.Event;
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Endless_Loop_Safe {
+	public static void m1() {
+		Event e = new Event(0, 10);
+		while (true) {
+			e.switchLights(5);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package ch.ethz.rse.integration.tests;
+
+import ch.ethz.rse.Event;
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Nested_Loop_Safe {
+	public static void m1() {
+		Event e = new Event(0, 100);
+
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				e.switchLights(j);
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package ch.ethz.rse.integration.tests;
+
+import ch.ethz.rse.Event;
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Sequential_Loop_Safe {
+	public static void m1() {
+		int k = 0;
+		while (k < 10) {
+			k++;
+		}
+
+		Event e = new Event(0, k);
+		for (int j = 0; j < k; j++) {
+			e.switchLights(j);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package ch.ethz.rse.integration.tests;
+
+import ch.ethz.rse.Event;
+
+// expected results:
+// START_END_ORDER SAFE
+// AFTER_START SAFE
+// BEFORE_END SAFE
+
+public class Unrelated_Var_Safe {
+	public static void m1(int y) {
+		int a = y * 3;
+		int b = a - y;
+		int x = 2 * b;
+
+		Event e = new Event(0, 10);
+		if (x > 4 && x < 4) {
+			e.switchLights(-1);
+		}
+		e.switchLights(5);
+	}
+}
@@ -0,0 +1,96 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import apron.ApronException;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
+import apron.MpqScalar;
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.internal.JIfStmt;
+import soot.jimple.internal.JNeExpr;
+
+/**
+ * Sanity checks on the transfer functions of conditional jumps
+ */
+public class ConditionTest {
+
+	/**
+	 *
+	 * @return the state where every integer variable of analysis is in
+	 *         [-bound, bound]
+	 */
+	private static NumericalStateWrapper bounded(NumericalAnalysis analysis, int bound) {
+		List<Lincons1> constraints = new ArrayList<Lincons1>();
+		for (Object var : analysis.env.getIntVars()) {
+			for (int sign : new int[] { 1, -1 }) {
+				Linterm1[] terms = { new Linterm1(var.toString(), new MpqScalar(sign)) };
+				constraints.add(new Lincons1(Lincons1.SUPEQ, new Linexpr1(analysis.env, terms, new MpqScalar(bound))));
+			}
+		}
+		NumericalStateWrapper state = NumericalStateWrapper.top(analysis.man, analysis.env);
+		state.meet(constraints.toArray(new Lincons1[constraints.size()]));
+		return state;
+	}
+
+	/**
+	 *
+	 * @return the states after falling out and after branching out of a jump
+	 *         with the given transfer function, from state
+	 */
+	private static NumericalStateWrapper[] apply(NumericalAnalysis.TransferFunction transfer, NumericalStateWrapper state)
+			throws ApronException {
+		NumericalStateWrapper[] ret = { state.copy(), state.copy() };
+		transfer.apply(ret[0], ret[1]);
+		return ret;
+	}
+
+	@ParameterizedTest
+	@EnumSource(AbstractDomain.class)
+	public void testLinearMatchesTree(AbstractDomain domain) throws ApronException {
+		String packageName = "ch.ethz.rse.integration.tests.Branch_Test_Safe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.AFTER_START, true);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+		SootMethod m = sc.getMethodByName("m1");
+
+		Set<Class<?>> kinds = new HashSet<Class<?>>();
+		try (NumericalAnalysis analysis = new NumericalAnalysis(m, new PointsToInitializer(sc), domain)) {
+			NumericalStateWrapper state = bounded(analysis, 3);
+			for (Unit u : m.getActiveBody().getUnits()) {
+				if (!(u instanceof JIfStmt)) {
+					continue;
+				}
+				Value condition = ((JIfStmt) u).getCondition();
+				kinds.add(condition.getClass());
+				NumericalStateWrapper[] linear = apply(analysis.compileIf(condition, true), state);
+				NumericalStateWrapper[] tree = apply(analysis.compileIf(condition, false), state);
+				for (int i = 0; i < 2; i++) {
+					Assertions.assertTrue(linear[i].isIncludedIn(tree[i]) && tree[i].isIncludedIn(linear[i]),
+							condition + ": " + linear[i] + " != " + tree[i]);
+				}
+				if (condition instanceof JNeExpr) {
+					// a != b holds for some values in the bounds
+					Assertions.assertFalse(linear[1].isBottom(), condition.toString());
+				}
+			}
+		}
+		// ==, !=, <, <=, >, >=
+		Assertions.assertEquals(6, kinds.size(), kinds.toString());
+	}
+
+}
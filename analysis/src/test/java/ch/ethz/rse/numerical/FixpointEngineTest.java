@@ -0,0 +1,36 @@
+package ch.ethz.rse.numerical;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+
+/**
+ * Sanity checks on the fixpoint iteration
+ */
+public class FixpointEngineTest {
+
+	@Test
+	public void testUnchangedLoopIsStable() {
+		String packageName = "ch.ethz.rse.integration.tests.Endless_Loop_Safe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.AFTER_START, true);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+		SootMethod m = sc.getMethodByName("m1");
+
+		long checks = NumericalStateWrapper.getConvergenceChecks();
+		long shortcuts = NumericalStateWrapper.getConvergenceShortcuts();
+		try (NumericalAnalysis analysis = new NumericalAnalysis(m, new PointsToInitializer(sc), AbstractDomain.POLKA)) {
+			// the loop body does not change the state, so the loop head is stable
+			// after one pass, without joining or calling into Apron
+			Assertions.assertEquals(1, NumericalStateWrapper.getConvergenceChecks() - checks);
+			Assertions.assertEquals(1, NumericalStateWrapper.getConvergenceShortcuts() - shortcuts);
+			Assertions.assertEquals(0, analysis.getWideningCount());
+		}
+	}
+
+}
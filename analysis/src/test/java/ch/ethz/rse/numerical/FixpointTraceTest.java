@@ -0,0 +1,74 @@
+package ch.ethz.rse.numerical;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import apron.Environment;
+import apron.Manager;
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Sanity checks on writing and decoding fixpoint traces
+ */
+public class FixpointTraceTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testDumpDecode() throws IOException {
+		String packageName = "ch.ethz.rse.integration.tests.Endless_Loop_Safe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.AFTER_START, true);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+		SootMethod m = sc.getMethodByName("m1");
+		UnitGraph graph = new BriefUnitGraph(m.getActiveBody());
+		List<Unit> units = new ArrayList<Unit>(m.getActiveBody().getUnits());
+
+		Manager man = AbstractDomain.BOX.createManager();
+		NumericalStateWrapper bottom = NumericalStateWrapper.bottom(man, new Environment());
+		FixpointTrace trace = new FixpointTrace(m.getSignature(), graph, man, 3);
+		trace.record(FixpointTrace.JOIN, units.get(0), 0, bottom);
+		trace.record(FixpointTrace.FLOW, units.get(0), 0, bottom);
+		trace.record(FixpointTrace.JOIN, units.get(1), 2, bottom);
+		trace.record(FixpointTrace.WIDEN, units.get(1), 0, bottom);
+		trace.record(FixpointTrace.STABLE, units.get(2), 1000, bottom);
+		Assertions.assertEquals(5, trace.getRecorded());
+
+		// only the last three events are kept, in chronological order
+		File file = this.directory.resolve("sub").resolve("trace.bin").toFile();
+		trace.dump(file);
+		String decoded;
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+			decoded = FixpointTrace.decode(in);
+		}
+		String expected = m.getSignature() + ": " + units.size() + " units, last 3 of 5 events\n"
+				+ "join unit=1 edge=2 size=-1\n" + "widen unit=1 edge=0 size=-1\n" + "stable unit=2 edge=127 size=-1\n";
+		Assertions.assertEquals(expected, decoded);
+	}
+
+	@Test
+	public void testDecodeOther() throws IOException {
+		File file = this.directory.resolve("other.bin").toFile();
+		Files.write(file.toPath(), new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 });
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+			Assertions.assertThrows(IOException.class, () -> FixpointTrace.decode(in));
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package ch.ethz.rse.numerical;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import apron.Abstract1;
+import apron.ApronException;
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.testing.VerificationTestCase;
+import ch.ethz.rse.verify.QueryStates;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.Unit;
+
+/**
+ * Sanity checks on charging the states of analyses to a native memory budget
+ */
+public class NativeBudgetTest {
+
+	private static final String EXAMPLE = "ch.ethz.rse.integration.tests.Nested_Loop_Safe";
+
+	private static SootClass load() {
+		VerificationTestCase t = new VerificationTestCase(EXAMPLE, VerificationProperty.AFTER_START, true);
+		return SootHelper.loadClassAndAnalyze(t.getTestClass());
+	}
+
+	@Test
+	public void testRetained() throws ApronException {
+		SootClass sc = load();
+		SootMethod m = sc.getMethodByName("m1");
+		PointsToInitializer pointsTo = new PointsToInitializer(sc);
+		NativeBudget budget = new NativeBudget(0);
+
+		List<NumericalStateWrapper> queryStates = new ArrayList<NumericalStateWrapper>();
+		long retainedSize = 0;
+		long stateSize;
+		try (NumericalAnalysis analysis = new NumericalAnalysis(m, pointsTo, AbstractDomain.POLKA, null, budget)) {
+			// all states at the fixpoint are charged, and were charged while iterating
+			stateSize = analysis.getStateSize();
+			Assertions.assertTrue(stateSize > 0);
+			Assertions.assertEquals(stateSize, budget.getHeld());
+			Assertions.assertTrue(budget.getPeak() >= stateSize);
+			// the loop conditions and assignments are linear
+			Assertions.assertTrue(analysis.getNativeObjects().containsKey("Lincons1"), analysis.getNativeObjects().toString());
+			Assertions.assertTrue(analysis.getNativeObjects().containsKey("Linexpr1"), analysis.getNativeObjects().toString());
+
+			Set<Abstract1> counted = Collections.newSetFromMap(new IdentityHashMap<Abstract1, Boolean>());
+			for (Unit query : QueryStates.getQueries(pointsTo.getIndex(m))) {
+				NumericalStateWrapper state = analysis.getFallFlowAfter(query);
+				queryStates.add(state);
+				if (counted.add(state.get())) {
+					retainedSize += state.get().getSize(analysis.man);
+				}
+			}
+			Assertions.assertFalse(queryStates.isEmpty());
+			analysis.retain(queryStates);
+			analysis.retain(queryStates);
+		}
+		// only the retained states are still held
+		Assertions.assertEquals(retainedSize, budget.getHeld());
+		Assertions.assertTrue(retainedSize < stateSize);
+	}
+
+	@Test
+	public void testExceeded() {
+		SootClass sc = load();
+		SootMethod m = sc.getMethodByName("m1");
+		PointsToInitializer pointsTo = new PointsToInitializer(sc);
+
+		NativeBudget unlimited = new NativeBudget(0);
+		new NumericalAnalysis(m, pointsTo, AbstractDomain.POLKA, null, unlimited).close();
+
+		// the iteration stops once it holds more than allowed, and releases
+		// everything it held
+		NativeBudget budget = new NativeBudget(Math.max(1, unlimited.getPeak() / 2));
+		RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+				() -> new NumericalAnalysis(m, pointsTo, AbstractDomain.POLKA, null, budget));
+		Assertions.assertTrue(e.getMessage().startsWith("Native memory budget"), e.getMessage());
+		Assertions.assertEquals(0, budget.getHeld());
+		Assertions.assertTrue(budget.getPeak() <= budget.getLimit());
+	}
+
+}
@@ -0,0 +1,58 @@
+package ch.ethz.rse.numerical;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.numerical.WeakTopologicalOrder.Component;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Sanity checks on the weak topological order of nested loops
+ */
+public class WeakTopologicalOrderTest {
+
+	@Test
+	public void testNestedLoops() {
+		String packageName = "ch.ethz.rse.integration.tests.Nested_Loop_Safe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.AFTER_START, true);
+		SootClass sc = SootHelper.loadClass(t.getTestClass());
+		SootMethod m = sc.getMethodByName("m1");
+		UnitGraph g = SootHelper.getUnitGraph(m);
+
+		WeakTopologicalOrder wto = new WeakTopologicalOrder(g);
+		Component outer = WeakTopologicalOrderTest.getLoop(wto.getComponents());
+		Assertions.assertNotNull(outer, wto.toString());
+		Component inner = WeakTopologicalOrderTest.getLoop(outer.body);
+		Assertions.assertNotNull(inner, wto.toString());
+
+		// units of the inner loop belong to both loops
+		for (Component c : inner.body) {
+			Assertions.assertTrue(wto.isInLoop(c.head, inner.head));
+			Assertions.assertTrue(wto.isInLoop(c.head, outer.head));
+		}
+		Assertions.assertTrue(wto.isInLoop(inner.head, outer.head));
+
+		// the outer head is not in the inner loop, units before the loops in none
+		Assertions.assertFalse(wto.isInLoop(outer.head, inner.head));
+		Unit first = wto.getComponents().get(0).head;
+		Assertions.assertFalse(wto.isInLoop(first, outer.head));
+	}
+
+	private static Component getLoop(List<Component> components) {
+		for (Component c : components) {
+			if (c.isLoop()) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+}
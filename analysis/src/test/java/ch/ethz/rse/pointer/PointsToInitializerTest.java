@@ -0,0 +1,49 @@
+package ch.ethz.rse.pointer;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.Local;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.jimple.internal.JVirtualInvokeExpr;
+import soot.jimple.spark.pag.Node;
+
+/**
+ * Sanity checks on the precomputed points-to table
+ */
+public class PointsToInitializerTest {
+
+	@Test
+	public void testTable() {
+		String packageName = "ch.ethz.rse.integration.tests.Pointer_Test_Unsafe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.BEFORE_END, false);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+		PointsToInitializer p = new PointsToInitializer(sc);
+		PointsToAnalysisWrapper w = new PointsToAnalysisWrapper(sc);
+
+		SootMethod m = sc.getMethodByName("m1");
+		for (JVirtualInvokeExpr invoke : p.getVirtualInvokes(m)) {
+			Local base = (Local) invoke.getBase();
+			BitSet ids = p.getInitializerIds(base);
+
+			// the table agrees with a direct query of the points-to analysis
+			Collection<Node> nodes = w.getNodes(base);
+			Assertions.assertEquals(nodes.size(), ids.cardinality());
+			Assertions.assertEquals(p.pointsTo(base).size(), ids.cardinality());
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				Assertions.assertEquals(id, p.getInitializer(id).getUniqueNumber());
+			}
+
+			// queries are answered from the table
+			Assertions.assertSame(ids, p.getInitializerIds(base));
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package ch.ethz.rse.pointer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.jimple.internal.JInvokeStmt;
+
+/**
+ * Sanity checks on the program index
+ */
+public class ProgramIndexTest {
+
+	@Test
+	public void testIndex() {
+		String packageName = "ch.ethz.rse.integration.tests.Pointer_Test_Unsafe";
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.BEFORE_END, false);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+
+		SootMethod m = sc.getMethodByName("m1");
+		ProgramIndex index = new ProgramIndex(m);
+
+		// two events, one call to switchLights
+		Assertions.assertEquals(2, index.getEventInitializations().size());
+		Assertions.assertEquals(1, index.getSwitchLightsCalls().size());
+
+		// invocations map back to their statements
+		JInvokeStmt call = index.getSwitchLightsCalls().get(0);
+		Assertions.assertSame(call, index.getStatement(call.getInvokeExpr()));
+	}
+
+}
@@ -0,0 +1,48 @@
+package ch.ethz.rse.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sanity checks on the metrics reports
+ */
+public class MetricsTest {
+
+	@Test
+	public void testJson() {
+		Metrics metrics = new Metrics();
+		metrics.addTime("fixpoint", 1500000);
+		metrics.addTime("fixpoint", 500000);
+		metrics.add("flow_through", 7);
+
+		Map<String, Object> method = new LinkedHashMap<String, Object>();
+		method.put("method", "<A: void \"m\"()>");
+		method.put("units", 3);
+		metrics.addMethod(method);
+
+		String json = metrics.toJson("A:AFTER_START");
+		Assertions.assertTrue(json.contains("\"task\": \"A:AFTER_START\""), json);
+		Assertions.assertTrue(json.contains("\"fixpoint\": 2.000"), json);
+		Assertions.assertTrue(json.contains("\"flow_through\": 7"), json);
+		Assertions.assertTrue(json.contains("{\"method\": \"<A: void \\\"m\\\"()>\", \"units\": 3}"), json);
+	}
+
+	@Test
+	public void testPrometheus() {
+		Metrics metrics = new Metrics();
+		metrics.addTime("spark", 250000000);
+		metrics.add("widening", 2);
+
+		Metrics total = new Metrics();
+		total.addAll(metrics);
+		total.addAll(metrics);
+
+		String text = total.toPrometheus();
+		Assertions.assertTrue(text.contains("verifier_phase_seconds_total{phase=\"spark\"} 0.500000000\n"), text);
+		Assertions.assertTrue(text.contains("# TYPE verifier_widening_total counter\nverifier_widening_total 4\n"), text);
+	}
+
+}
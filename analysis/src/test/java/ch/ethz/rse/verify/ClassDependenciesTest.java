@@ -0,0 +1,38 @@
+package ch.ethz.rse.verify;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationTask;
+
+/**
+ * Sanity checks on the application classes a class depends on
+ */
+public class ClassDependenciesTest {
+
+	private static final String TEST = "ch/ethz/rse/integration/tests/Pointer_Test_Safe";
+
+	private static final String EVENT = "ch/ethz/rse/Event";
+
+	@Test
+	public void testDependencies() {
+		VerificationTask t = new VerificationTask(ClassDependencies.toClassName(TEST), VerificationProperty.AFTER_START);
+		ClassDependencies dependencies = ClassDependencies.of(t.getTestClass());
+
+		// library classes are not included
+		Assertions.assertEquals(2, dependencies.getDigests().size(), dependencies.getDigests().keySet().toString());
+		Assertions.assertTrue(dependencies.getDigests().containsKey(TEST));
+		Assertions.assertTrue(dependencies.getDigests().containsKey(EVENT));
+
+		// a change to Event affects the test, but not the other way around
+		Set<String> affected = dependencies.getAffected(Collections.singleton(EVENT));
+		Assertions.assertTrue(affected.contains(TEST) && affected.contains(EVENT), affected.toString());
+		Assertions.assertEquals(Collections.singleton(TEST), dependencies.getAffected(Collections.singleton(TEST)));
+		Assertions.assertTrue(dependencies.getAffected(Collections.<String>emptySet()).isEmpty());
+	}
+
+}
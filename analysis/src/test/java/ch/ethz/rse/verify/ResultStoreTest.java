@@ -0,0 +1,88 @@
+package ch.ethz.rse.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.VerificationResult;
+import ch.ethz.rse.VerificationTask;
+
+/**
+ * Sanity checks on the store of verification results
+ */
+public class ResultStoreTest {
+
+	@TempDir
+	Path directory;
+
+	private static byte[] key(int i) throws NoSuchAlgorithmException {
+		return MessageDigest.getInstance("SHA-256").digest(Integer.toString(i).getBytes());
+	}
+
+	@Test
+	public void testStore() throws IOException, NoSuchAlgorithmException {
+		// more results than fit in the initial index
+		int n = 5000;
+		try (ResultStore store = new ResultStore(this.directory.toFile())) {
+			Assertions.assertNull(store.lookup(key(0)));
+			for (int i = 0; i < n; i++) {
+				store.store(key(i), new VerificationResult(i % 2 == 0));
+			}
+			Assertions.assertEquals(new VerificationResult(true), store.lookup(key(0)));
+			Assertions.assertEquals(new VerificationResult(false), store.lookup(key(1)));
+		}
+
+		// a crashed writer left a partial record
+		File log = this.directory.resolve("results.log").toFile();
+		Files.write(log.toPath(), new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+
+		// results survive reopening, and the index is rebuilt from the log
+		Files.delete(this.directory.resolve("results.idx"));
+		try (ResultStore store = new ResultStore(this.directory.toFile())) {
+			for (int i = 0; i < n; i++) {
+				Assertions.assertEquals(new VerificationResult(i % 2 == 0), store.lookup(key(i)));
+			}
+			Assertions.assertNull(store.lookup(key(n)));
+			store.store(key(n), new VerificationResult(true));
+			Assertions.assertEquals(new VerificationResult(true), store.lookup(key(n)));
+		}
+	}
+
+	@Test
+	public void testKey() {
+		VerificationTask t = new VerificationTask("ch.ethz.rse.integration.tests.Basic_Test_Safe", VerificationProperty.START_END_ORDER);
+		byte[] key = ResultStore.key(t.getTestClass(), t.property);
+
+		Assertions.assertArrayEquals(key, ResultStore.key(t.getTestClass(), t.property));
+		Assertions.assertFalse(MessageDigest.isEqual(key, ResultStore.key(t.getTestClass(), VerificationProperty.AFTER_START)));
+	}
+
+	@Test
+	public void testClassFilesDigest() throws IOException {
+		Path classes = this.directory.resolve("classes");
+		Files.createDirectories(classes.resolve("a"));
+		Files.write(classes.resolve("a/A.class"), new byte[] { 1 });
+		Files.write(classes.resolve("B.class"), new byte[] { 2 });
+		Files.write(classes.resolve("notes.txt"), new byte[] { 3 });
+		byte[] digest = ResultStore.getClassFilesDigest(classes);
+
+		// only class files count
+		Files.write(classes.resolve("notes.txt"), new byte[] { 4 });
+		Assertions.assertArrayEquals(digest, ResultStore.getClassFilesDigest(classes));
+		Files.write(classes.resolve("a/A.class"), new byte[] { 5 });
+		Assertions.assertFalse(MessageDigest.isEqual(digest, ResultStore.getClassFilesDigest(classes)));
+
+		// tests run from a classes directory
+		Assertions.assertEquals(32, ResultStore.getAnalysisDigest().length);
+	}
+
+}
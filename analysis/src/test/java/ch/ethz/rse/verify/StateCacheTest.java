@@ -0,0 +1,100 @@
+package ch.ethz.rse.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import apron.Abstract1;
+import apron.ApronException;
+import apron.Environment;
+import apron.Lincons1;
+import apron.Linexpr1;
+import apron.Linterm1;
+import apron.Manager;
+import apron.MpqScalar;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import soot.Unit;
+import soot.jimple.Jimple;
+
+/**
+ * Sanity checks on writing, reading and caching states
+ */
+public class StateCacheTest {
+
+	@TempDir
+	Path directory;
+
+	private static final Environment ENV = new Environment(new String[] { "x", "y" }, new String[] {});
+
+	/**
+	 *
+	 * @return the state 0 <= x <= 5 && 2y - x >= 1
+	 */
+	private static NumericalStateWrapper state(Manager man) throws ApronException {
+		Lincons1[] constraints = {
+				new Lincons1(Lincons1.SUPEQ,
+						new Linexpr1(ENV, new Linterm1[] { new Linterm1("x", new MpqScalar(1)) }, new MpqScalar(0))),
+				new Lincons1(Lincons1.SUPEQ,
+						new Linexpr1(ENV, new Linterm1[] { new Linterm1("x", new MpqScalar(-1)) }, new MpqScalar(5))),
+				new Lincons1(Lincons1.SUPEQ, new Linexpr1(ENV,
+						new Linterm1[] { new Linterm1("y", new MpqScalar(2)), new Linterm1("x", new MpqScalar(-1)) },
+						new MpqScalar(-1))) };
+		Abstract1 elem = new Abstract1(man, ENV);
+		elem.meet(man, constraints);
+		return new NumericalStateWrapper(man, elem);
+	}
+
+	private static NumericalStateWrapper roundTrip(Manager man, NumericalStateWrapper state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Assertions.assertTrue(state.write(new DataOutputStream(bytes)));
+		return NumericalStateWrapper.read(man, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static void assertSame(NumericalStateWrapper expected, NumericalStateWrapper actual) {
+		Assertions.assertTrue(expected.isIncludedIn(actual) && actual.isIncludedIn(expected), expected + " != " + actual);
+	}
+
+	@ParameterizedTest
+	@EnumSource(AbstractDomain.class)
+	public void testWriteRead(AbstractDomain domain) throws ApronException, IOException {
+		Manager man = domain.createManager();
+		for (NumericalStateWrapper state : Arrays.asList(state(man), NumericalStateWrapper.top(man, ENV),
+				NumericalStateWrapper.bottom(man, ENV))) {
+			assertSame(state, roundTrip(man, state));
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(AbstractDomain.class)
+	public void testStoreLoad(AbstractDomain domain) throws ApronException {
+		Manager man = domain.createManager();
+		List<Unit> queries = Arrays.<Unit>asList(Jimple.v().newNopStmt(), Jimple.v().newNopStmt());
+		Map<Unit, NumericalStateWrapper> states = new LinkedHashMap<Unit, NumericalStateWrapper>();
+		states.put(queries.get(0), state(man));
+		states.put(queries.get(1), NumericalStateWrapper.bottom(man, ENV));
+
+		StateCache cache = new StateCache(this.directory.toFile());
+		Assertions.assertNull(cache.load("key", queries, man));
+		cache.store("key", domain, new QueryStates(states, null));
+
+		QueryStates loaded = new StateCache(this.directory.toFile()).load("key", queries, man);
+		Assertions.assertNull(loaded.getSummary());
+		for (Unit query : queries) {
+			assertSame(states.get(query), loaded.getStates().get(query));
+		}
+	}
+
+}
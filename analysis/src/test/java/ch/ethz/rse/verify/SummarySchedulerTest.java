@@ -0,0 +1,67 @@
+package ch.ethz.rse.verify;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.testing.VerificationTestCase;
+import ch.ethz.rse.utils.Configuration;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+
+/**
+ * Sanity checks on the interprocedural analysis
+ */
+public class SummarySchedulerTest {
+
+	private static final String packageName = "ch.ethz.rse.integration.interprocedural.Call_Summary_Safe";
+
+	@AfterEach
+	public void reset() {
+		Configuration.props.set("INTERPROCEDURAL", "false");
+	}
+
+	private static SootClass load() {
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.AFTER_START, true);
+		return SootHelper.loadClassAndAnalyze(t.getTestClass());
+	}
+
+	@Test
+	public void testComponents() {
+		SootClass sc = load();
+		List<SootMethod> methods = new LinkedList<SootMethod>(sc.getMethods());
+		SummaryScheduler scheduler = new SummaryScheduler(methods, AbstractDomain.POLKA, 6, (m, summaries) -> null);
+
+		// no recursion, and callees come before their callers
+		List<List<SootMethod>> components = scheduler.getComponents();
+		Assertions.assertEquals(methods.size(), components.size());
+		int m1 = components.indexOf(Collections.singletonList(sc.getMethodByName("m1")));
+		Assertions.assertTrue(components.indexOf(Collections.singletonList(sc.getMethodByName("clamp"))) < m1);
+		Assertions.assertTrue(components.indexOf(Collections.singletonList(sc.getMethodByName("add"))) < m1);
+	}
+
+	@Test
+	public void testSummaries() {
+		Configuration.props.set("INTERPROCEDURAL", "true");
+		Verifier v = new Verifier(load());
+		for (VerificationProperty property : VerificationProperty.values()) {
+			Assertions.assertTrue(v.check(property), property.toString());
+		}
+	}
+
+	@Test
+	public void testWithoutSummaries() {
+		// results of calls are unknown
+		Verifier v = new Verifier(load());
+		Assertions.assertFalse(v.check(VerificationProperty.AFTER_START));
+		Assertions.assertFalse(v.check(VerificationProperty.START_END_ORDER));
+	}
+
+}
@@ -0,0 +1,135 @@
+package ch.ethz.rse.verify;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import ch.ethz.rse.VerificationProperty;
+import ch.ethz.rse.numerical.AbstractDomain;
+import ch.ethz.rse.numerical.NumericalAnalysis;
+import ch.ethz.rse.numerical.NumericalStateWrapper;
+import ch.ethz.rse.pointer.PointsToInitializer;
+import ch.ethz.rse.testing.VerificationTestCase;
+import soot.SootClass;
+import soot.SootHelper;
+import soot.SootMethod;
+import soot.Unit;
+
+/**
+ * Sanity checks on deciding properties from constant arguments
+ */
+public class VerifierTest {
+
+	private static Verifier load(String packageName) {
+		VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.START_END_ORDER, true);
+		SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+		return new Verifier(sc, 1);
+	}
+
+	@Test
+	public void testConstantSafe() {
+		Verifier v = load("ch.ethz.rse.integration.tests.Basic_Test_Safe");
+
+		Map<VerificationProperty, Boolean> results = v.check(EnumSet.allOf(VerificationProperty.class));
+		for (VerificationProperty p : VerificationProperty.values()) {
+			Assertions.assertTrue(results.get(p), p.toString());
+		}
+		// all properties decided without numerical analysis
+		Assertions.assertTrue(v.numericalAnalysis.isEmpty());
+	}
+
+	@Test
+	public void testConstantUnsafe() {
+		Verifier v = load("ch.ethz.rse.integration.tests.Basic_Test_Unsafe");
+
+		// violations may be unreachable
+		Assertions.assertNull(v.decideConstant(VerificationProperty.START_END_ORDER));
+		Assertions.assertNull(v.decideConstant(VerificationProperty.AFTER_START));
+		Assertions.assertNull(v.decideConstant(VerificationProperty.BEFORE_END));
+	}
+
+	@Test
+	public void testConstantUnreachable() {
+		// switchLights(-1) violates AFTER_START, but is unreachable
+		Verifier v = load("ch.ethz.rse.integration.tests.Unrelated_Var_Safe");
+
+		Assertions.assertEquals(Boolean.TRUE, v.decideConstant(VerificationProperty.START_END_ORDER));
+		Assertions.assertNull(v.decideConstant(VerificationProperty.AFTER_START));
+		Assertions.assertEquals(Boolean.TRUE, v.decideConstant(VerificationProperty.BEFORE_END));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "Basic_Test_Array", "Basic_Test_Field", "Basic_Test_Global", "Basic_Test_Global_Array" })
+	public void testConstantInvalid(String name) {
+		// all properties could be decided from constants, but the program is not
+		// supported
+		Verifier v = load("ch.ethz.rse.integration.invalid_input_tests." + name);
+
+		Assertions.assertNotNull(v.decideConstant(VerificationProperty.START_END_ORDER));
+		Assertions.assertThrows(UnsupportedOperationException.class,
+				() -> v.check(EnumSet.allOf(VerificationProperty.class)));
+		Assertions.assertTrue(v.numericalAnalysis.isEmpty());
+	}
+
+	@Test
+	public void testVariable() {
+		Verifier v = load("ch.ethz.rse.integration.tests.Basic_Variable_Test_Unsafe");
+
+		Assertions.assertNull(v.decideConstant(VerificationProperty.START_END_ORDER));
+		Assertions.assertNull(v.decideConstant(VerificationProperty.AFTER_START));
+		Assertions.assertNull(v.decideConstant(VerificationProperty.BEFORE_END));
+	}
+
+	private static List<Boolean> checkAll(Verifier v) {
+		return Arrays.asList(v.checkStartEndOrder(), v.checkAfterStart(), v.checkBeforeEnd());
+	}
+
+	@Test
+	public void testProjectionKeepsVerdicts() {
+		String[] examples = { "Branch_Test_Safe", "NotEq_Test_Unsafe", "Nested_Loop_Safe", "Widening_Test_Unsafe",
+				"Pointer_Test_Unsafe" };
+		boolean dropped = false;
+		for (String example : examples) {
+			String packageName = "ch.ethz.rse.integration.tests." + example;
+			VerificationTestCase t = new VerificationTestCase(packageName, VerificationProperty.START_END_ORDER, true);
+			SootClass sc = SootHelper.loadClassAndAnalyze(t.getTestClass());
+			Verifier v = new Verifier(sc, 1);
+			PointsToInitializer pointsTo = new PointsToInitializer(sc);
+
+			for (AbstractDomain domain : AbstractDomain.values()) {
+				Map<SootMethod, QueryStates> full = new ConcurrentHashMap<SootMethod, QueryStates>();
+				Map<SootMethod, QueryStates> projected = new ConcurrentHashMap<SootMethod, QueryStates>();
+				for (SootMethod m : sc.getMethods()) {
+					List<Unit> queries = QueryStates.getQueries(pointsTo.getIndex(m));
+					Map<Unit, Set<String>> variables = QueryStates.getVariables(m, pointsTo);
+					try (NumericalAnalysis analysis = new NumericalAnalysis(m, pointsTo, domain)) {
+						full.put(m, QueryStates.of(analysis, queries, null));
+						projected.put(m, QueryStates.of(analysis, queries, variables, null));
+					}
+					for (Unit query : queries) {
+						NumericalStateWrapper before = full.get(m).getFallFlowAfter(query);
+						NumericalStateWrapper after = projected.get(m).getFallFlowAfter(query);
+						dropped |= after.get().getEnvironment().getVars().length < before.get().getEnvironment()
+								.getVars().length;
+					}
+				}
+
+				v.numericalAnalysis = full;
+				List<Boolean> expected = checkAll(v);
+				v.numericalAnalysis = projected;
+				Assertions.assertEquals(expected, checkAll(v), example + " with " + domain);
+			}
+		}
+		// the projection is not trivial
+		Assertions.assertTrue(dropped);
+	}
+
+}
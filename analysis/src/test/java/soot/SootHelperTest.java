@@ -1,9 +1,17 @@
 package soot;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import ch.ethz.rse.VerificationProperty;
 import ch.ethz.rse.testing.VerificationTestCase;
@@ -48,4 +56,28 @@ public class SootHelperTest {
 		Assertions.assertNotNull(a);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testLoadWarm() {
+		ClassToVerify c = this.getExampleClassToVerify();
+		SootClass first = SootHelper.loadClassAndAnalyzeWarm(c);
+		SootClass second = SootHelper.loadClassAndAnalyzeWarm(c);
+
+		// unchanged class is not reloaded
+		Assertions.assertSame(first, second);
+		Assertions.assertNotNull(Scene.v().getPointsToAnalysis());
+	}
+
+	@Test
+	public void testLoadSkipsBrokenClass(@TempDir Path dir) throws IOException, FileNotFoundException {
+		File broken = dir.resolve("Broken.class").toFile();
+		Files.write(broken.toPath(), "not a class file".getBytes(StandardCharsets.UTF_8));
+		ClassToVerify c = this.getExampleClassToVerify();
+
+		List<SootClass> scs = SootHelper.loadClassesAndAnalyze(Arrays.asList(new ClassToVerify(dir.toFile(), "Broken"), c));
+
+		// the broken class does not prevent loading the other one
+		Assertions.assertNull(scs.get(0));
+		Assertions.assertEquals(c.getPackageName(), scs.get(1).getName());
+	}
+
+}
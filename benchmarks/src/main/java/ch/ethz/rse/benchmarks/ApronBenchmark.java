@@ -0,0 +1,190 @@
+package ch.ethz.rse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apron.Abstract1;
+import apron.ApronException;
+import apron.Box;
+import apron.Environment;
+import apron.Manager;
+import apron.MpqScalar;
+import apron.Octagon;
+import apron.Polka;
+import apron.Tcons1;
+import apron.Texpr1BinNode;
+import apron.Texpr1CstNode;
+import apron.Texpr1Intern;
+import apron.Texpr1Node;
+import apron.Texpr1VarNode;
+
+/**
+ * Cost of the Apron operations used by NumericalAnalysis and Verifier, by
+ * abstract domain and number of variables in the environment.
+ *
+ * States and constraints have the shapes produced by the analysis: bounds and
+ * differences of variables, built as tree constraints over subtractions (see
+ * NumericalAnalysis.compileCondition).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApronBenchmark {
+
+	/**
+	 * Abstract domain: Box, Octagon, strict or loose polyhedra
+	 */
+	@Param({ "BOX", "OCTAGON", "POLKA_STRICT", "POLKA_LOOSE" })
+	public String domain;
+
+	/**
+	 * Number of integer variables in the environment
+	 */
+	@Param({ "5", "10", "25", "50", "100", "200" })
+	public int dimensions;
+
+	private Manager man;
+
+	/**
+	 * State as in the body of a loop: 0 <= x_i <= 10 and x_i <= x_{i+1}
+	 */
+	private Abstract1 inner;
+
+	/**
+	 * Weaker state, as after one more loop iteration: 0 <= x_i <= 20 and
+	 * x_i <= x_{i+1} + 1
+	 */
+	private Abstract1 outer;
+
+	/**
+	 * Branch condition x1 < x0, as compiled for an if statement
+	 */
+	private Tcons1[] condition;
+
+	/**
+	 * Right-hand side of x0 = x1 + 1
+	 */
+	private Texpr1Intern increment;
+
+	/**
+	 * Property check 0 <= end - time, as in Verifier.checkBeforeEnd
+	 */
+	private Tcons1 property;
+
+	@Setup(Level.Trial)
+	public void setup() throws ApronException {
+		switch (this.domain) {
+		case "BOX":
+			this.man = new Box();
+			break;
+		case "OCTAGON":
+			this.man = new Octagon();
+			break;
+		case "POLKA_STRICT":
+			this.man = new Polka(true);
+			break;
+		case "POLKA_LOOSE":
+			this.man = new Polka(false);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown domain " + this.domain);
+		}
+
+		String[] ints = new String[this.dimensions];
+		for (int i = 0; i < this.dimensions; i++) {
+			ints[i] = "x" + i;
+		}
+		Environment env = new Environment(ints, new String[] {});
+
+		this.inner = this.chain(env, ints, 10, 0);
+		this.outer = this.chain(env, ints, 20, 1);
+
+		this.condition = new Tcons1[] { new Tcons1(env, Tcons1.SUP, sub(var(ints[0]), var(ints[1]))) };
+		this.increment = new Texpr1Intern(env, new Texpr1BinNode(Texpr1BinNode.OP_ADD, Texpr1BinNode.RTYPE_INT,
+				Texpr1BinNode.RDIR_ZERO, var(ints[1]), cst(1)));
+		this.property = new Tcons1(env, Tcons1.SUPEQ, sub(var(ints[this.dimensions - 1]), var(ints[0])));
+	}
+
+	/**
+	 * 0 <= x_i <= bound and x_i <= x_{i+1} + slack
+	 */
+	private Abstract1 chain(Environment env, String[] ints, int bound, int slack) throws ApronException {
+		Tcons1[] constraints = new Tcons1[3 * ints.length - 1];
+		int c = 0;
+		for (int i = 0; i < ints.length; i++) {
+			// x_i - 0 >= 0
+			constraints[c++] = new Tcons1(env, Tcons1.SUPEQ, sub(var(ints[i]), cst(0)));
+			// bound - x_i >= 0
+			constraints[c++] = new Tcons1(env, Tcons1.SUPEQ, sub(cst(bound), var(ints[i])));
+			if (i + 1 < ints.length) {
+				// x_{i+1} + slack - x_i >= 0
+				Texpr1Node next = new Texpr1BinNode(Texpr1BinNode.OP_ADD, Texpr1BinNode.RTYPE_INT, Texpr1BinNode.RDIR_ZERO,
+						var(ints[i + 1]), cst(slack));
+				constraints[c++] = new Tcons1(env, Tcons1.SUPEQ, sub(next, var(ints[i])));
+			}
+		}
+		return new Abstract1(this.man, constraints);
+	}
+
+	private static Texpr1Node var(String name) {
+		return new Texpr1VarNode(name);
+	}
+
+	private static Texpr1Node cst(int value) {
+		return new Texpr1CstNode(new MpqScalar(value));
+	}
+
+	private static Texpr1Node sub(Texpr1Node op1, Texpr1Node op2) {
+		return new Texpr1BinNode(Texpr1BinNode.OP_SUB, Texpr1BinNode.RTYPE_INT, Texpr1BinNode.RDIR_ZERO, op1, op2);
+	}
+
+	@Benchmark
+	public Abstract1 copy() throws ApronException {
+		return new Abstract1(this.man, this.inner);
+	}
+
+	@Benchmark
+	public Abstract1 join() throws ApronException {
+		return this.inner.joinCopy(this.man, this.outer);
+	}
+
+	@Benchmark
+	public Abstract1 meet() throws ApronException {
+		return this.outer.meetCopy(this.man, this.condition);
+	}
+
+	@Benchmark
+	public Abstract1 widening() throws ApronException {
+		return this.inner.widening(this.man, this.outer);
+	}
+
+	@Benchmark
+	public Abstract1 assign() throws ApronException {
+		return this.inner.assignCopy(this.man, "x0", this.increment, null);
+	}
+
+	@Benchmark
+	public boolean isIncluded() throws ApronException {
+		return this.inner.isIncluded(this.man, this.outer);
+	}
+
+	@Benchmark
+	public boolean satisfy() throws ApronException {
+		return this.inner.satisfy(this.man, this.property);
+	}
+}
@@ -0,0 +1,29 @@
+package ch.ethz.rse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks through JMH's command line, writing results as JSON to
+ * target/apron-benchmarks.json unless another result format or file is given.
+ * All other JMH options are passed on, e.g. <code>-p dimensions=5,50</code> or
+ * <code>-p domain=OCTAGON join</code>.
+ */
+public class BenchmarkMain {
+
+	private static final String DEFAULT_RESULT_FILE = "target/apron-benchmarks.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (!jmhArgs.contains("-rf")) {
+			jmhArgs.add("-rf");
+			jmhArgs.add("json");
+		}
+		if (!jmhArgs.contains("-rff")) {
+			jmhArgs.add("-rff");
+			jmhArgs.add(DEFAULT_RESULT_FILE);
+		}
+		org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+	}
+}